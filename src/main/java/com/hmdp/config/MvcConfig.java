@@ -1,13 +1,22 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.utils.AdminInterceptor;
+import com.hmdp.utils.CacheSerializer;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.ResponseCacheInterceptor;
+import com.hmdp.utils.ResponseCacheManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * 做登录校验的配置
@@ -18,6 +27,19 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    @Resource
+    CacheSerializer cacheSerializer;
+
+    @Resource
+    ResponseCacheManager responseCacheManager;
+
+    //管理员的用户id，逗号分隔
+    @Value("${hmdp.admin.user-ids:}")
+    String adminUserIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         //登录拦截器
@@ -28,9 +50,18 @@ public class MvcConfig implements WebMvcConfigurer {
                 "/shop/**",
                 "/shop-type/**",
                 "/voucher/**",
-                "/upload/**"
+                "/upload/**",
+                "/health/**"
         ).order(1);
         //token刷新拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, cacheRedisTemplate, cacheSerializer)).order(0);
+        //管理接口拦截器，只放行配置的管理员
+        Set<Long> adminIds = new HashSet<>();
+        for (String id : StrUtil.split(adminUserIds, ',', true, true)) {
+            adminIds.add(Long.valueOf(id));
+        }
+        registry.addInterceptor(new AdminInterceptor(adminIds)).addPathPatterns("/admin/**").order(2);
+        //响应缓存拦截器，只处理带有@ResponseCache注解的接口
+        registry.addInterceptor(new ResponseCacheInterceptor(responseCacheManager)).order(3);
     }
 }
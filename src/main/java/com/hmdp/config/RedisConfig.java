@@ -0,0 +1,42 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheSerializer;
+import com.hmdp.utils.CacheSerializer;
+import com.hmdp.utils.JsonCacheSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+@Configuration
+public class RedisConfig {
+    /**
+     * 缓存数据使用的RedisTemplate，value为序列化好的字节数组
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> cacheRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    /**
+     * 缓存数据的序列化方式，默认使用二进制，可以通过配置切换回json
+     */
+    @Bean
+    @Primary
+    public CacheSerializer cacheSerializer(@Value("${hmdp.cache.serializer:binary}") String type,
+                                           JsonCacheSerializer jsonCacheSerializer) {
+        if ("json".equalsIgnoreCase(type)) {
+            return jsonCacheSerializer;
+        }
+        return new BinaryCacheSerializer(jsonCacheSerializer);
+    }
+}
@@ -0,0 +1,64 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.ResponseCacheManager;
+import com.hmdp.utils.SeckillSoldOutFlags;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.SystemConstants;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * redis发布订阅的配置，用于节点之间同步本地状态
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LocalCache localCache,
+                                                                       ShopBloomFilter shopBloomFilter,
+                                                                       ShopGeoIndex shopGeoIndex,
+                                                                       ShopNameIndex shopNameIndex,
+                                                                       ResponseCacheManager responseCacheManager,
+                                                                       SeckillSoldOutFlags seckillSoldOutFlags) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //本地缓存失效，消息内容就是缓存的key
+        container.addMessageListener((message, pattern) ->
+                        localCache.evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+        //其它节点新增了店铺，消息内容是店铺id
+        container.addMessageListener((message, pattern) ->
+                        shopBloomFilter.add(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(RedisConstants.SHOP_BLOOM_ADD_CHANNEL));
+        //店铺新增或修改，消息内容是店铺id，重新加载店铺坐标和名称
+        container.addMessageListener((message, pattern) -> {
+            Long shopId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+            shopGeoIndex.refresh(shopId);
+            shopNameIndex.refresh(shopId);
+        }, new ChannelTopic(RedisConstants.SHOP_CHANGED_CHANNEL));
+        //接口响应缓存失效，消息内容是 缓存名称[:路径变量值]
+        container.addMessageListener((message, pattern) ->
+                        responseCacheManager.evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.RESPONSE_CACHE_EVICT_CHANNEL));
+        //秒杀券售罄和补充库存，消息内容是优惠券id；消息中没有店铺id，清除所有店铺的优惠券列表响应缓存
+        container.addMessageListener((message, pattern) -> {
+            seckillSoldOutFlags.markSoldOut(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+            responseCacheManager.evict(SystemConstants.VOUCHER_LIST_CACHE);
+        }, new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL));
+        container.addMessageListener((message, pattern) -> {
+            seckillSoldOutFlags.clear(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+            responseCacheManager.evict(SystemConstants.VOUCHER_LIST_CACHE);
+        }, new ChannelTopic(RedisConstants.SECKILL_RESTOCK_CHANNEL));
+        return container;
+    }
+}
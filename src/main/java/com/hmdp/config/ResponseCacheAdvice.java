@@ -0,0 +1,75 @@
+package com.hmdp.config;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.utils.ResponseCache;
+import com.hmdp.utils.ResponseCacheInterceptor;
+import com.hmdp.utils.ResponseCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * 保存@ResponseCache接口的响应，只缓存成功的结果
+ */
+@Slf4j
+@RestControllerAdvice
+public class ResponseCacheAdvice implements ResponseBodyAdvice<Object> {
+
+    @Resource
+    private ResponseCacheManager responseCacheManager;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(ResponseCache.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest) || !(body instanceof Result)
+                || !Boolean.TRUE.equals(((Result) body).getSuccess())) {
+            return body;
+        }
+        HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+        String key = (String) servletRequest.getAttribute(ResponseCacheInterceptor.CACHE_KEY_ATTRIBUTE);
+        if (key == null) {
+            return body;
+        }
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(body);
+            String etag = "\"" + DigestUtil.md5Hex(bytes) + "\"";
+            ResponseCache annotation = returnType.getMethodAnnotation(ResponseCache.class);
+            responseCacheManager.put(key,
+                    (String) servletRequest.getAttribute(ResponseCacheInterceptor.CACHE_GROUP_ATTRIBUTE),
+                    (Long) servletRequest.getAttribute(ResponseCacheInterceptor.CACHE_VERSION_ATTRIBUTE),
+                    bytes, etag, annotation.ttl());
+            response.getHeaders().setETag(etag);
+            response.getHeaders().setCacheControl("no-cache");
+            if (ResponseCacheInterceptor.matches(servletRequest.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                return null;
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("序列化响应失败, key: {}", key, e);
+        }
+        return body;
+    }
+}
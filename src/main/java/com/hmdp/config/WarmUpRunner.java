@@ -0,0 +1,175 @@
+package com.hmdp.config;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 启动预热
+ * SpringBoot在所有ApplicationRunner执行完之后才把节点标记为就绪，预热期间 /health/readiness 返回503，
+ * 负载均衡不会把流量转发到还没预热好的节点上
+ */
+@Slf4j
+@Component
+public class WarmUpRunner implements ApplicationRunner {
+
+    @Value("${hmdp.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.warm-up.hot-shops:100}")
+    private int hotShops;
+
+    @Value("${hmdp.warm-up.db-connections:5}")
+    private int dbConnections;
+
+    @Value("${hmdp.warm-up.replay-file:}")
+    private String replayFile;
+
+    @Value("${hmdp.warm-up.replay-limit:200}")
+    private int replayLimit;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private DataSource dataSource;
+
+    @Resource
+    private Environment environment;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        step("建立连接", this::primeConnections);
+        step("加载lua脚本", this::loadScripts);
+        step("预热热点店铺", () -> log.info("预热热点店铺{}个", shopService.preloadHotShops(hotShops)));
+        step("加载店铺坐标", this::loadShopGeo);
+        step("构建店铺名称索引", () -> log.info("店铺名称索引{}个", shopNameIndex.build()));
+        step("回放请求", this::replayRequests);
+        log.info("预热完成，总耗时{}ms", System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 每一步失败都只记录日志，不影响节点启动
+     */
+    private void step(String name, WarmUpTask task) {
+        long begin = System.currentTimeMillis();
+        try {
+            task.run();
+            log.info("预热[{}]完成，耗时{}ms", name, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.warn("预热[{}]失败", name, e);
+        }
+    }
+
+    /**
+     * 提前建立数据库和redis连接，避免第一批请求承担建连的开销
+     */
+    private void primeConnections() throws SQLException {
+        List<Connection> connections = new ArrayList<>(dbConnections);
+        try {
+            for (int i = 0; i < dbConnections; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+        stringRedisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+    }
+
+    /**
+     * 将所有lua脚本提前加载到redis，之后执行时直接EVALSHA
+     */
+    private void loadScripts() throws Exception {
+        org.springframework.core.io.Resource[] scripts =
+                new PathMatchingResourcePatternResolver().getResources("classpath*:*.lua");
+        for (org.springframework.core.io.Resource script : scripts) {
+            byte[] body = StreamUtils.copyToByteArray(script.getInputStream());
+            String sha = stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.scriptLoad(body));
+            log.debug("加载lua脚本{}，sha：{}", script.getFilename(), sha);
+        }
+    }
+
+    private void loadShopGeo() {
+        int count = 0;
+        int indexed = 0;
+        for (ShopType type : shopTypeService.list()) {
+            count += shopService.loadShopGeo(type.getId());
+            indexed += shopGeoIndex.load(type.getId());
+        }
+        log.info("加载店铺坐标{}个，本地坐标索引{}个", count, indexed);
+    }
+
+    /**
+     * 回放录制的请求，让热点代码提前完成JIT编译
+     */
+    private void replayRequests() {
+        if (StrUtil.isBlank(replayFile)) {
+            return;
+        }
+        List<String> paths = FileUtil.readUtf8Lines(replayFile);
+        Collections.shuffle(paths);
+        String baseUrl = "http://127.0.0.1:" + environment.getProperty("local.server.port");
+        RestTemplate restTemplate = new RestTemplate();
+        int count = 0;
+        for (String path : paths.subList(0, Math.min(replayLimit, paths.size()))) {
+            if (StrUtil.isBlank(path)) {
+                continue;
+            }
+            try {
+                restTemplate.getForObject(baseUrl + path.trim(), String.class);
+                count++;
+            } catch (RestClientException e) {
+                log.debug("回放请求失败：{}", path, e);
+            }
+        }
+        log.info("回放请求{}个", count);
+    }
+
+    @FunctionalInterface
+    private interface WarmUpTask {
+        void run() throws Exception;
+    }
+}
@@ -65,13 +65,24 @@ public class BlogController {
         return blogService.likeBlog(id);
     }
 
+    /**
+     * 查询当前用户的笔记
+     *
+     * @param current 页码
+     * @param cursor  游标，传入时(第一页传空字符串)按游标从新到旧翻页并忽略页码
+     * @return 笔记列表，按游标翻页时返回列表和下一页的游标
+     */
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                              @RequestParam(value = "cursor", required = false) String cursor) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
-        // 根据用户查询
+        if (cursor != null) {
+            return blogService.queryBlogOfUserAfter(user.getId(), cursor);
+        }
+        // 根据用户查询，不查询总数
         Page<Blog> page = blogService.query()
-                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
         return Result.ok(records);
@@ -80,11 +91,16 @@ public class BlogController {
     /**
      * 分页查询
      *
-     * @param current
-     * @return
+     * @param current 页码
+     * @param cursor  游标，传入时(第一页传空字符串)按游标翻页并忽略页码
+     * @return 笔记列表，按游标翻页时返回列表和下一页的游标
      */
     @GetMapping("/hot")
-    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                               @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.queryHotBlogAfter(cursor);
+        }
         return blogService.queryHotBlog(current);
     }
 
@@ -104,15 +120,20 @@ public class BlogController {
     /**
      * 查询用户笔记
      *
-     * @param current
-     * @param id
-     * @return
+     * @param current 页码
+     * @param id      用户id
+     * @param cursor  游标，传入时(第一页传空字符串)按游标从新到旧翻页并忽略页码
+     * @return 笔记列表，按游标翻页时返回列表和下一页的游标
      */
     @GetMapping("/of/user")
-    public Result queryBlogByUserId(@RequestParam(value = "current", defaultValue = "1") Integer current, @RequestParam("id") Long id) {
+    public Result queryBlogByUserId(@RequestParam(value = "current", defaultValue = "1") Integer current, @RequestParam("id") Long id,
+                                    @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.queryBlogOfUserAfter(id, cursor);
+        }
         LambdaQueryWrapper<Blog> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.eq(Blog::getUserId, id);
-        Page<Blog> pageInfo = new Page<>(current, SystemConstants.MAX_PAGE_SIZE);
+        Page<Blog> pageInfo = new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false);
         blogService.page(pageInfo, queryWrapper);
         List<Blog> records = pageInfo.getRecords();
         return Result.ok(records);
@@ -0,0 +1,97 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.ResponseCacheManager;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopGeoSync;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存管理控制器，只有hmdp.admin.user-ids中配置的管理员可以访问
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private ShopGeoSync shopGeoSync;
+
+    @Resource
+    private ResponseCacheManager responseCacheManager;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    /**
+     * 查询各级缓存的命中情况
+     *
+     * @return 本地缓存与redis缓存的命中数、未命中数和命中率
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(localCache.stats());
+    }
+
+    /**
+     * 查询当前节点探测到的热点key
+     *
+     * @return 访问次数最多的key及估算次数，hot为true的key已放入本地热点缓存
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.topKeys());
+    }
+
+    /**
+     * 在后台从数据库全量重建redis中的店铺坐标集合，结果记录在日志中
+     *
+     * @return 无
+     */
+    @PostMapping("/geo/rebuild")
+    public Result rebuildShopGeo() {
+        if (!shopGeoSync.rebuildAsync()) {
+            return Result.fail("正在重建中");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 从数据库重建当前节点的店铺布隆过滤器，用于删除店铺之后，或初始化失败后立即重试
+     *
+     * @return 加载的店铺数量
+     */
+    @PostMapping("/bloom/rebuild")
+    public Result rebuildShopBloom() {
+        return Result.ok(shopBloomFilter.rebuild());
+    }
+
+    /**
+     * 清除所有节点的接口响应缓存，用于直接修改数据库的数据
+     *
+     * @param name 缓存名称
+     * @param key  路径变量的值，为空时清除整个缓存
+     */
+    @PostMapping("/response/evict")
+    public Result evictResponse(@RequestParam("name") String name,
+                                @RequestParam(value = "key", required = false) String key) {
+        responseCacheManager.publishEvict(name, key);
+        return Result.ok();
+    }
+}
@@ -0,0 +1,38 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>
+ * 健康检查，供负载均衡判断节点是否可以接收流量
+ * </p>
+ */
+@RestController
+@RequestMapping("/health")
+public class HealthController {
+
+    @Resource
+    private ApplicationAvailability applicationAvailability;
+
+    /**
+     * 就绪检查，启动预热完成之前返回503
+     */
+    @GetMapping("/readiness")
+    public Result readiness(HttpServletResponse response) {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        if (state != ReadinessState.ACCEPTING_TRAFFIC) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return Result.fail(state.name());
+        }
+        return Result.ok(state.name());
+    }
+}
@@ -1,12 +1,10 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.CacheMode;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -29,12 +27,14 @@ public class ShopController {
     /**
      * 根据id查询商铺信息
      *
-     * @param id 商铺id
+     * @param id   商铺id
+     * @param mode 缓存模式，热点店铺可以使用逻辑过期
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return shopService.queryShopById(id);
+    public Result queryShopById(@PathVariable("id") Long id,
+                                @RequestParam(value = "mode", defaultValue = "TTL") CacheMode mode) {
+        return shopService.queryShopById(id, mode);
     }
 
     /**
@@ -45,10 +45,7 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -68,15 +65,23 @@ public class ShopController {
      *
      * @param typeId  商铺类型
      * @param current 页码
-     * @return 商铺列表
+     * @param cursor  游标，传入时(第一页传空字符串)按游标翻页并忽略页码；有坐标时按距离翻页，否则按id翻页
+     * @return 商铺列表，按游标翻页时返回列表和下一页的游标
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
+        if (cursor != null && x != null && y != null) {
+            return shopService.queryShopByCursor(typeId, x, y, cursor);
+        }
+        if (cursor != null) {
+            return shopService.queryShopByTypeAfter(typeId, cursor);
+        }
         return shopService.queryShopByType(typeId,current,x,y);
     }
 
@@ -92,11 +97,21 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 商铺名称前缀联想
+     *
+     * @param prefix 用户已经输入的名称前缀
+     * @param size   返回的数量，最多10个
+     * @return 只包含id和名称的商铺列表，按销量排序
+     */
+    @GetMapping("/of/name/suggest")
+    public Result suggestShopName(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "size", defaultValue = "10") Integer size
+    ) {
+        return shopService.suggestShopName(prefix, size);
     }
 }
@@ -0,0 +1,48 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IShopTypeService;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 店铺类型管理控制器，只有hmdp.admin.user-ids中配置的管理员可以访问
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/shop-type")
+public class ShopTypeAdminController {
+
+    @Resource
+    private IShopTypeService typeService;
+
+    /**
+     * 新增店铺类型
+     *
+     * @param shopType 店铺类型
+     * @return 店铺类型id
+     */
+    @PostMapping
+    public Result saveShopType(@RequestBody ShopType shopType) {
+        return typeService.saveShopType(shopType);
+    }
+
+    /**
+     * 更新店铺类型
+     *
+     * @param shopType 店铺类型
+     * @return 无
+     */
+    @PutMapping
+    public Result updateShopType(@RequestBody ShopType shopType) {
+        return typeService.updateShopType(shopType);
+    }
+}
@@ -4,6 +4,7 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.ResponseCache;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -11,6 +12,8 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.annotation.Resource;
 import java.util.List;
 
+import static com.hmdp.utils.SystemConstants.SHOP_TYPE_LIST_CACHE;
+
 /**
  * <p>
  * 前端控制器
@@ -26,6 +29,7 @@ public class ShopTypeController {
     private IShopTypeService typeService;
 
     @GetMapping("list")
+    @ResponseCache(value = SHOP_TYPE_LIST_CACHE, ttl = 3600)
     public Result queryTypeList() {
         List<ShopType> typeList = typeService
                 .query().orderByAsc("sort").list();
@@ -0,0 +1,36 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IVoucherService;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 优惠券管理控制器，只有hmdp.admin.user-ids中配置的管理员可以访问
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/voucher")
+public class VoucherAdminController {
+
+    @Resource
+    private IVoucherService voucherService;
+
+    /**
+     * 补充秒杀券库存
+     * @param voucherId 优惠券id
+     * @param amount 补充的数量
+     * @return 无
+     */
+    @PutMapping("/seckill/{id}/stock")
+    public Result replenishSeckillStock(@PathVariable("id") Long voucherId, @RequestParam("amount") Integer amount) {
+        return voucherService.replenishSeckillStock(voucherId, amount);
+    }
+}
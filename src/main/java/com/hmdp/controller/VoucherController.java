@@ -4,10 +4,14 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.ResponseCache;
+import com.hmdp.utils.SeckillWaitingRoom;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 
+import static com.hmdp.utils.SystemConstants.VOUCHER_LIST_CACHE;
+
 /**
  * <p>
  *  前端控制器
@@ -23,6 +27,9 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
 
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -30,7 +37,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -41,16 +48,20 @@ public class VoucherController {
      */
     @PostMapping("seckill")
     public Result addSeckillVoucher(@RequestBody Voucher voucher) {
+        if (voucher.getWaitingRoomRate() != null && voucher.getWaitingRoomRate() > 0 && !seckillWaitingRoom.enabled()) {
+            return Result.fail("没有配置等候室的签名密钥，不能开启等候室");
+        }
         voucherService.addSeckillVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
     /**
-     * 查询店铺的优惠券列表
+     * 查询店铺的优惠券列表，列表中的秒杀库存会变化，响应缓存的有效期较短，售罄和补充库存时清除
      * @param shopId 店铺id
      * @return 优惠券列表
      */
     @GetMapping("/list/{shopId}")
+    @ResponseCache(value = VOUCHER_LIST_CACHE, key = "shopId", ttl = 10)
     public Result queryVoucherOfShop(@PathVariable("shopId") Long shopId) {
        return voucherService.queryVoucherOfShop(shopId);
     }
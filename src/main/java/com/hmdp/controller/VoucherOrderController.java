@@ -3,9 +3,12 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.impl.VoucherOrderServiceImpl;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
@@ -25,8 +28,49 @@ public class VoucherOrderController {
     @Resource
     private VoucherOrderServiceImpl voucherOrderService;
 
+    /**
+     * 秒杀下单
+     *
+     * @param voucherId      优惠券id
+     * @param admissionToken 等候室发放的入场令牌，开启等候室的秒杀券必须携带
+     * @return 订单id
+     */
     @PostMapping("seckill/{id}")
-    public Result seckillVoucher(@PathVariable("id") Long voucherId) {
-        return voucherOrderService.seckillVoucher(voucherId);
+    public Result seckillVoucher(@PathVariable("id") Long voucherId,
+                                 @RequestHeader(value = "X-Admission-Token", required = false) String admissionToken) {
+        return voucherOrderService.seckillVoucher(voucherId, admissionToken);
+    }
+
+    /**
+     * 进入秒杀券的等候室排队
+     *
+     * @param voucherId 优惠券id
+     * @return 排队凭证和排队位置，已经轮到时直接返回入场令牌
+     */
+    @PostMapping("queue/{id}")
+    public Result joinWaitingRoom(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.joinWaitingRoom(voucherId);
+    }
+
+    /**
+     * 查询排队进度，按返回的retryAfter间隔轮询
+     *
+     * @param voucherId 优惠券id
+     * @param ticket    排队凭证
+     * @return 排队位置，轮到时返回入场令牌
+     */
+    @GetMapping("queue/{id}")
+    public Result pollWaitingRoom(@PathVariable("id") Long voucherId, @RequestParam("ticket") String ticket) {
+        return voucherOrderService.pollWaitingRoom(voucherId, ticket);
+    }
+
+    /**
+     * 查询异步下单队列的运行指标
+     *
+     * @return 队列深度、容量、处理中的订单数以及提交、写入、失败、拒绝的累计数量
+     */
+    @GetMapping("stats")
+    public Result orderQueueStats() {
+        return Result.ok(voucherOrderService.orderQueueStats());
     }
 }
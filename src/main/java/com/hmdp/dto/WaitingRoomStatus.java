@@ -0,0 +1,33 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+@Data
+@Accessors(chain = true)
+public class WaitingRoomStatus {
+    /**
+     * 排队凭证，轮询时带上
+     */
+    private String ticket;
+    /**
+     * 排队的位置，从1开始
+     */
+    private Long position;
+    /**
+     * 前面还有多少人
+     */
+    private Long ahead;
+    /**
+     * 建议多久之后再查询，毫秒
+     */
+    private Long retryAfter;
+    /**
+     * 入场令牌，轮到时才有，下单时放在请求头X-Admission-Token中
+     */
+    private String token;
+    /**
+     * 入场令牌的过期时间，毫秒时间戳
+     */
+    private Long expireAt;
+}
@@ -0,0 +1,73 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 缓存失效事件的发件箱
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_cache_outbox")
+public class CacheOutbox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String TYPE_EVICT = "EVICT";
+    public static final String TYPE_PUBLISH = "PUBLISH";
+    public static final String TYPE_SHOP_GEO = "SHOP_GEO";
+
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_DELAYED_DELETE = 1;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 事件类型
+     */
+    private String type;
+
+    /**
+     * 事件内容，EVICT事件为逗号分隔的缓存key，PUBLISH事件为 频道|消息，SHOP_GEO事件为 店铺id[,原类型id]
+     */
+    private String payload;
+
+    /**
+     * 状态，0：待投递，1：已投递一次，等待延迟双删
+     */
+    private Integer status;
+
+    /**
+     * 失败重试次数
+     */
+    private Integer retryCount;
+
+    /**
+     * 下次投递时间
+     */
+    private LocalDateTime nextRetryTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -90,6 +90,24 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private LocalDateTime endTime;
 
+    /**
+     * 秒杀券每秒最多放行的下单请求数，为空或0表示不限制
+     */
+    @TableField(exist = false)
+    private Integer rateLimit;
+
+    /**
+     * 秒杀券每个用户每秒最多的下单请求数，为空或0表示不限制
+     */
+    @TableField(exist = false)
+    private Integer userRateLimit;
+
+    /**
+     * 秒杀券等候室每秒放行的人数，为空或0表示不开启等候室
+     */
+    @TableField(exist = false)
+    private Integer waitingRoomRate;
+
     /**
      * 创建时间
      */
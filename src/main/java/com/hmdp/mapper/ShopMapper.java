@@ -2,6 +2,7 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.cursor.Cursor;
 
 /**
  * <p>
@@ -13,4 +14,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface ShopMapper extends BaseMapper<Shop> {
 
+    /**
+     * 流式查询全部店铺的id、类型和坐标，必须在事务中遍历
+     */
+    Cursor<Shop> scanShopGeo();
 }
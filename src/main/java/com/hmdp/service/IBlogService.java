@@ -20,6 +20,10 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryHotBlog(Integer current);
 
+    Result queryHotBlogAfter(String cursor);
+
+    Result queryBlogOfUserAfter(Long userId, String cursor);
+
     Result queryBlogLikes(Integer id);
 
     Result saveBlog(Blog blog);
@@ -0,0 +1,36 @@
+package com.hmdp.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.entity.CacheOutbox;
+
+/**
+ * <p>
+ *  缓存失效发件箱
+ * </p>
+ */
+public interface ICacheOutboxService extends IService<CacheOutbox> {
+
+    /**
+     * 在当前事务中记录需要删除的缓存key，事务提交后异步删除
+     */
+    void evictAfterCommit(String... keys);
+
+    /**
+     * 在当前事务中记录需要广播的消息，事务提交后异步发布
+     */
+    void publishAfterCommit(String channel, String message);
+
+    /**
+     * 在当前事务中记录店铺坐标的变更，事务提交后异步同步到redis的GEO集合
+     *
+     * @param oldTypeId 修改前的店铺类型，新增店铺时为null
+     */
+    void syncShopGeoAfterCommit(Long shopId, Long oldTypeId);
+
+    /**
+     * 投递到期的事件
+     *
+     * @return 本次处理的事件数量
+     */
+    int relay();
+}
@@ -2,6 +2,7 @@ package com.hmdp.service;
 
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheMode;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 /**
@@ -16,7 +17,23 @@ public interface IShopService extends IService<Shop> {
 
     Result queryShopById(Long id);
 
+    Result queryShopById(Long id, CacheMode mode);
+
+    Result saveShop(Shop shop);
+
     Result updateShop(Shop shop);
 
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result queryShopByCursor(Integer typeId, Double x, Double y, String cursor);
+
+    Result queryShopByTypeAfter(Integer typeId, String cursor);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result suggestShopName(String prefix, Integer size);
+
+    int preloadHotShops(int count);
+
+    int loadShopGeo(Long typeId);
 }
@@ -4,6 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -14,8 +17,16 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
-    Result seckillVoucher(Long voucherId);
+    Result joinWaitingRoom(Long voucherId);
+
+    Result pollWaitingRoom(Long voucherId, String ticket);
+
+    Result seckillVoucher(Long voucherId, String admissionToken);
+
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+
+    int createVoucherOrders(Long voucherId, List<VoucherOrder> orders);
 
-    Result createVoucherOrder(Long voucherId);
+    Map<String, Object> orderQueueStats();
 
 }
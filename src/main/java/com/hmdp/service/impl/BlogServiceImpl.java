@@ -5,6 +5,7 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -15,6 +16,10 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMode;
+import com.hmdp.utils.CacheOptions;
+import com.hmdp.utils.KeysetCursor;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -26,8 +31,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+
 /**
  * <p>
  * 服务实现类
@@ -48,13 +57,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+    @Resource
+    private CacheClient cacheClient;
+
 
     @Override
     public Result queryHotBlog(Integer current) {
         // 根据用户查询
         Page<Blog> page = query()
                 .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
         // 查询用户
@@ -66,13 +78,69 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(records);
     }
 
+    /**
+     * 按游标查询热门笔记，按 点赞数, id 倒序，游标中记录了上一页最后一篇笔记的点赞数和id
+     * 翻页期间点赞数变化的笔记可能重复或者漏掉，热门列表可以接受
+     */
+    @Override
+    public Result queryHotBlogAfter(String cursor) {
+        //1. 解析游标，空游标表示第一页
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        //2. WHERE liked < ? OR (liked = ? AND id < ?) ORDER BY liked DESC, id DESC LIMIT size+1
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<Blog> blogs = query()
+                .and(after != null, w -> w.lt("liked", after.getValue())
+                        .or(o -> o.eq("liked", after.getValue()).lt("id", after.getId())))
+                .orderByDesc("liked", "id")
+                .last("limit " + (size + 1))
+                .list();
+        CursorResult result = KeysetCursor.page(blogs, size, blog -> blog.getLiked().longValue(), Blog::getId);
+        //3. 查询用户和点赞状态
+        for (Object blog : result.getList()) {
+            queryBlogUser((Blog) blog);
+            isBlogLiked((Blog) blog);
+        }
+        return Result.ok(result);
+    }
+
+    /**
+     * 按游标查询用户的笔记，从新到旧，游标中记录了上一页最后一篇笔记的id
+     */
+    @Override
+    public Result queryBlogOfUserAfter(Long userId, String cursor) {
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        //WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT size+1，走(user_id, id)索引
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<Blog> blogs = query()
+                .eq("user_id", userId)
+                .lt(after != null, "id", after == null ? null : after.getId())
+                .orderByDesc("id")
+                .last("limit " + (size + 1))
+                .list();
+        return Result.ok(KeysetCursor.page(blogs, size, Blog::getId, Blog::getId));
+    }
+
 
     @Override
     public Result queryById(Integer id) {
-        Blog blog = getById(id);
-        if (blog == null) {
+        //先查缓存，并发查询同一篇笔记时只查一次数据库
+        Blog cachedBlog = cacheClient.query(CACHE_BLOG_KEY, id.longValue(), Blog.class, this::getById,
+                CacheOptions.of(CacheMode.TTL, CACHE_BLOG_TTL, TimeUnit.MINUTES).setHotKeyDetection(true));
+        if (cachedBlog == null) {
             return Result.fail("评价不存在或已被删除");
         }
+        //合并后的结果被多个线程共享，而点赞状态因人而异，所以拷贝一份再填充
+        Blog blog = BeanUtil.copyProperties(cachedBlog, Blog.class);
         queryBlogUser(blog);
         //追加判断blog是否被当前用户点赞，逻辑封装到isBlogLiked方法中
         isBlogLiked(blog);
@@ -114,6 +182,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             //将用户加入set集合
             if (success) {
                 stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+                cacheClient.evict(CACHE_BLOG_KEY + id);
             }
             //3. 如果当前用户已点赞，则取消点赞，将用户从set集合中移除
         } else {
@@ -122,6 +191,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             if (success) {
                 //从set集合移除
                 stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+                cacheClient.evict(CACHE_BLOG_KEY + id);
             }
         }
         return Result.ok();
@@ -202,11 +272,14 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        //解决SQL的in不能排序问题，手动指定排序为传入的ids
-        String idsStr = StrUtil.join(",", ids);
-        //5. 根据id查询blog
-        List<Blog> blogs = query().in("id", ids).last("order by field(id," + idsStr + ")").list();
-        for (Blog blog : blogs) {
+        //5. 根据id批量查询blog缓存，未命中的一次性查询数据库，结果与ids的顺序一致
+        List<Blog> cachedBlogs = cacheClient.queryBatch(CACHE_BLOG_KEY, ids, Blog.class, this::listByIds, Blog::getId,
+                CacheOptions.of(CacheMode.TTL, CACHE_BLOG_TTL, TimeUnit.MINUTES));
+        List<Blog> blogs = new ArrayList<>(cachedBlogs.size());
+        for (Blog cachedBlog : cachedBlogs) {
+            //作者和点赞状态因人而异，拷贝一份再填充
+            Blog blog = BeanUtil.copyProperties(cachedBlog, Blog.class);
+            blogs.add(blog);
             //5.1 查询发布该blog的用户信息
             queryBlogUser(blog);
             //5.2 查询当前用户是否给该blog点过赞
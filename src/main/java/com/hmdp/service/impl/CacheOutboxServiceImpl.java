@@ -0,0 +1,258 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.ShopGeoSync;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * 缓存失效发件箱
+ * 失效事件和业务数据在同一个事务中写入，事务提交后由投递线程批量删除redis中的缓存并通知各节点，
+ * 失败的事件按指数退避重试，投递成功的事件延迟一段时间后再删除一次，清掉并发读回填的旧数据
+ * </p>
+ */
+@Slf4j
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+
+    private static final int BATCH_SIZE = 100;
+    private static final long MAX_RETRY_INTERVAL = 60L;
+
+    //投递线程，已经有一个待执行的投递任务时丢弃新任务，由正在执行的任务一并处理
+    private static final ExecutorService RELAY_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.DiscardPolicy());
+
+    @Value("${hmdp.cache.outbox.second-delete-delay:1000}")
+    private long secondDeleteDelay;
+
+    @Resource
+    private RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private ShopGeoSync shopGeoSync;
+
+    //定时任务和事务提交后触发的投递不同时执行
+    private final ReentrantLock relayLock = new ReentrantLock();
+
+    @Override
+    public void evictAfterCommit(String... keys) {
+        record(CacheOutbox.TYPE_EVICT, String.join(",", keys));
+    }
+
+    @Override
+    public void publishAfterCommit(String channel, String message) {
+        record(CacheOutbox.TYPE_PUBLISH, channel + "|" + message);
+    }
+
+    @Override
+    public void syncShopGeoAfterCommit(Long shopId, Long oldTypeId) {
+        record(CacheOutbox.TYPE_SHOP_GEO, oldTypeId == null ? shopId.toString() : shopId + "," + oldTypeId);
+    }
+
+    private void record(String type, String payload) {
+        CacheOutbox event = new CacheOutbox()
+                .setType(type)
+                .setPayload(payload)
+                .setStatus(CacheOutbox.STATUS_PENDING)
+                .setRetryCount(0)
+                .setNextRetryTime(LocalDateTime.now());
+        save(event);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            wakeUp();
+            return;
+        }
+        //事务提交后立即触发投递，不占用写请求的时间
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUp();
+            }
+        });
+    }
+
+    private void wakeUp() {
+        RELAY_EXECUTOR.execute(() -> {
+            try {
+                relay();
+            } catch (Exception e) {
+                log.error("投递缓存失效事件失败", e);
+            }
+        });
+    }
+
+    /**
+     * 兜底的定时投递，处理节点宕机遗留的事件以及到期的重试和延迟双删
+     */
+    @Scheduled(fixedDelayString = "${hmdp.cache.outbox.poll-interval:1000}")
+    public void scheduledRelay() {
+        try {
+            relay();
+        } catch (Exception e) {
+            log.error("投递缓存失效事件失败", e);
+        }
+    }
+
+    @Override
+    public int relay() {
+        if (!relayLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int total = 0;
+            int count;
+            do {
+                count = relayBatch();
+                total += count;
+            } while (count == BATCH_SIZE);
+            return total;
+        } finally {
+            relayLock.unlock();
+        }
+    }
+
+    private int relayBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        //1.查询到期的事件，多个节点可能同时投递同一批事件，删除缓存是幂等的
+        List<CacheOutbox> events = query()
+                .le("next_retry_time", now)
+                .orderByAsc("id")
+                .last("limit " + BATCH_SIZE)
+                .list();
+        if (events.isEmpty()) {
+            return 0;
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        Set<String> messages = new LinkedHashSet<>();
+        Set<Long> failedIds = new HashSet<>();
+        for (CacheOutbox event : events) {
+            if (CacheOutbox.TYPE_PUBLISH.equals(event.getType())) {
+                messages.add(event.getPayload());
+            } else if (CacheOutbox.TYPE_SHOP_GEO.equals(event.getType())) {
+                //店铺坐标逐个同步，失败的单独重试
+                if (!syncShopGeo(event)) {
+                    retryLater(event, now);
+                    failedIds.add(event.getId());
+                }
+            } else {
+                keys.addAll(StrUtil.split(event.getPayload(), ',', true, true));
+            }
+        }
+        //2.一次性删除这批事件涉及的所有key，并通知所有节点清除本地缓存，再发布广播消息
+        try {
+            if (!keys.isEmpty()) {
+                cacheRedisTemplate.delete(keys);
+            }
+            for (String key : keys) {
+                localCache.publishEvict(key);
+            }
+            for (String message : messages) {
+                stringRedisTemplate.convertAndSend(StrUtil.subBefore(message, '|', false),
+                        StrUtil.subAfter(message, '|', false));
+            }
+        } catch (DataAccessException e) {
+            log.warn("删除缓存失败，稍后重试, 事件数量: {}", events.size(), e);
+            //只重试删除和广播事件，已经同步成功的店铺坐标事件直接移除，同步失败的上面已经安排了重试
+            List<Long> syncedIds = new ArrayList<>();
+            for (CacheOutbox event : events) {
+                if (failedIds.contains(event.getId())) {
+                    continue;
+                }
+                if (CacheOutbox.TYPE_SHOP_GEO.equals(event.getType())) {
+                    syncedIds.add(event.getId());
+                } else {
+                    retryLater(event, now);
+                }
+            }
+            if (!syncedIds.isEmpty()) {
+                removeByIds(syncedIds);
+            }
+            return events.size();
+        }
+        //3.首次投递的删除事件等待延迟双删，已经双删的事件和广播事件直接移除
+        List<Long> pendingIds = new ArrayList<>();
+        List<Long> doneIds = new ArrayList<>();
+        for (CacheOutbox event : events) {
+            if (failedIds.contains(event.getId())) {
+                continue;
+            }
+            if (event.getStatus() == CacheOutbox.STATUS_PENDING && CacheOutbox.TYPE_EVICT.equals(event.getType())) {
+                pendingIds.add(event.getId());
+            } else {
+                doneIds.add(event.getId());
+            }
+        }
+        if (!pendingIds.isEmpty()) {
+            update().set("status", CacheOutbox.STATUS_DELAYED_DELETE)
+                    .set("next_retry_time", now.plus(secondDeleteDelay, ChronoUnit.MILLIS))
+                    .in("id", pendingIds)
+                    .update();
+        }
+        if (!doneIds.isEmpty()) {
+            removeByIds(doneIds);
+        }
+        return events.size();
+    }
+
+    private boolean syncShopGeo(CacheOutbox event) {
+        List<String> parts = StrUtil.split(event.getPayload(), ',');
+        try {
+            shopGeoSync.sync(Long.valueOf(parts.get(0)), parts.size() > 1 ? Long.valueOf(parts.get(1)) : null);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("同步店铺坐标失败，稍后重试, 事件: {}", event.getPayload(), e);
+            return false;
+        }
+    }
+
+    private void retryLater(CacheOutbox event, LocalDateTime now) {
+        int retryCount = event.getRetryCount() + 1;
+        if (retryCount % 10 == 0) {
+            log.error("缓存失效事件多次投递失败, id: {}, key: {}", event.getId(), event.getPayload());
+        }
+        //指数退避，最长间隔一分钟
+        long interval = Math.min(1L << Math.min(retryCount, 6), MAX_RETRY_INTERVAL);
+        update().set("retry_count", retryCount)
+                .set("next_retry_time", now.plusSeconds(interval))
+                .eq("id", event.getId())
+                .update();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        RELAY_EXECUTOR.shutdown();
+    }
+}
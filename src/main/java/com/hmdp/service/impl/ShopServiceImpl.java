@@ -1,29 +1,46 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.codec.Base64;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.CursorResult;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMode;
+import com.hmdp.utils.CacheOptions;
+import com.hmdp.utils.KeysetCursor;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.*;
+
 /**
  * <p>
  * 服务实现类
@@ -38,53 +55,162 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
     @Override
     public Result queryShopById(Long id) {
-        String key = "cache:shop:" + id;
-        //1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            //3.存在，直接返回
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return Result.ok(shop);
-        }
-        //4.不存在，根据id查询数据库
-        Shop shop = getById(id);
-        //5.不存在，返回错误
+        return queryShopById(id, CacheMode.TTL);
+    }
+
+    @Override
+    public Result queryShopById(Long id, CacheMode mode) {
+        //布隆过滤器判断店铺是否可能存在，不存在直接返回
+        if (!shopBloomFilter.mightContain(id)) {
+            return Result.fail("店铺不存在!!");
+        }
+        //逻辑过期的数据结构不同，使用单独的key
+        String keyPrefix = mode == CacheMode.LOGICAL_EXPIRE ? CACHE_SHOP_LOGICAL_KEY : CACHE_SHOP_KEY;
+        Shop shop = cacheClient.query(keyPrefix, id, Shop.class, this::getById,
+                CacheOptions.of(mode, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                        .setLocalCache(true).setHotKeyDetection(true)
+                        .setLockKeyPrefix(LOCK_SHOP_KEY).setBulkhead("shop"));
         if (shop == null) {
             return Result.fail("店铺不存在!!");
         }
-        //存在，写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), 30, TimeUnit.MINUTES);
         return Result.ok(shop);
     }
 
+    /**
+     * 将店铺以逻辑过期的方式写入redis，可用于热点店铺的预热
+     */
+    public void saveShop2Redis(Shop shop, Long expireSeconds) {
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_LOGICAL_KEY + shop.getId(), shop, expireSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 按销量预热热点店铺到redis和本地缓存
+     *
+     * @param count 预热的店铺数量
+     * @return 实际预热的店铺数量
+     */
+    @Override
+    public int preloadHotShops(int count) {
+        List<Shop> shops = query().orderByDesc("sold").last("limit " + count).list();
+        for (Shop shop : shops) {
+            String key = CACHE_SHOP_KEY + shop.getId();
+            cacheClient.set(key, shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            localCache.put(key, shop);
+        }
+        return shops.size();
+    }
+
+    /**
+     * 将某个类型的店铺坐标写入redis的GEO集合，集合已存在时跳过
+     *
+     * @param typeId 店铺类型
+     * @return 写入的店铺数量
+     */
     @Override
+    public int loadShopGeo(Long typeId) {
+        String key = SHOP_GEO_KEY + typeId;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            return 0;
+        }
+        List<Shop> shops = query().select("id", "x", "y").eq("type_id", typeId).list();
+        if (shops.isEmpty()) {
+            return 0;
+        }
+        List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(shops.size());
+        for (Shop shop : shops) {
+            locations.add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+        }
+        stringRedisTemplate.opsForGeo().add(key, locations);
+        return shops.size();
+    }
+
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        Long id = shop.getId();
+        // 加入布隆过滤器，并通知其它节点
+        shopBloomFilter.publishAdd(id);
+        // 在同一个事务中记录缓存失效事件，提交后清除之前可能缓存的空值
+        cacheOutboxService.evictAfterCommit(CACHE_SHOP_KEY + id, CACHE_SHOP_LOGICAL_KEY + id);
+        // 通知所有节点更新本地的坐标索引，并写入redis的GEO集合
+        cacheOutboxService.publishAfterCommit(SHOP_CHANGED_CHANNEL, id.toString());
+        cacheOutboxService.syncShopGeoAfterCommit(id, null);
+        // 返回店铺id
+        return Result.ok(id);
+    }
+
+    @Override
+    @Transactional
     public Result updateShop(Shop shop) {
         Long id = shop.getId();
         if (id == null) {
             return Result.fail("商户id不能为空");
         }
+        //记录修改前的类型，类型变化时需要从原来的GEO集合中移除
+        Shop old = query().select("type_id").eq("id", id).one();
         updateById(shop);
-        stringRedisTemplate.delete("cache:shop:" + id);
+        //在同一个事务中记录缓存失效事件，提交后异步删除缓存，并通知所有节点清除本地缓存
+        cacheOutboxService.evictAfterCommit(CACHE_SHOP_KEY + id, CACHE_SHOP_LOGICAL_KEY + id);
+        cacheOutboxService.publishAfterCommit(SHOP_CHANGED_CHANNEL, id.toString());
+        cacheOutboxService.syncShopGeoAfterCommit(id, old == null ? null : old.getTypeId());
         return Result.ok();
     }
 
     @Override
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        if (current < 1) {
+            return Result.fail("页码必须大于0");
+        }
         //1. 判断是否需要根据距离查询
         if (x == null || y == null) {
             // 根据类型分页查询
             Page<Shop> page = query()
                     .eq("type_id", typeId)
-                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false));
             // 返回数据
             return Result.ok(page.getRecords());
         }
         //2. 计算分页查询参数
-        int from = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
-        int end = current * SystemConstants.MAX_PAGE_SIZE;
+        int from = (int) Math.min((long) (current - 1) * SystemConstants.MAX_PAGE_SIZE,
+                Integer.MAX_VALUE - SystemConstants.MAX_PAGE_SIZE);
+        int end = from + SystemConstants.MAX_PAGE_SIZE;
+        //优先查询本地坐标索引，只返回需要的一页，但仍要排出前面所有页，页码越大开销越大，深翻页应使用游标
+        List<ShopGeoIndex.Hit> hits = shopGeoIndex.search(typeId.longValue(), x, y, 5000, from, SystemConstants.MAX_PAGE_SIZE);
+        if (hits != null) {
+            if (hits.isEmpty()) {
+                return Result.ok(Collections.emptyList());
+            }
+            List<Long> ids = new ArrayList<>(hits.size());
+            HashMap<String, Distance> distanceMap = new HashMap<>(hits.size());
+            for (ShopGeoIndex.Hit hit : hits) {
+                ids.add(hit.getId());
+                distanceMap.put(hit.getId().toString(), new Distance(hit.getDistance()));
+            }
+            return Result.ok(queryShopsWithDistance(ids, distanceMap));
+        }
+        //索引还没加载好，查询redis
         String key = "shop:geo:" + typeId;
         //3. 查询redis、按照距离排序、分页; 结果：shopId、distance
         //GEOSEARCH key FROMLONLAT x y BYRADIUS 5000 m WITHDIST
@@ -110,13 +236,151 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             distanceMap.put(shopIdStr, distance);
         });
         //5. 根据id查询shop
-        String idsStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD( id," + idsStr + ")").list();
-        for (Shop shop : shops) {
+        List<Shop> shops = queryShopsWithDistance(ids, distanceMap);
+        //6. 返回
+        return Result.ok(shops);
+    }
+
+    /**
+     * 按游标查询附近的店铺，游标中记录了上一页最后一个店铺的距离和id，下一页从它之后继续查询
+     */
+    @Override
+    public Result queryShopByCursor(Integer typeId, Double x, Double y, String cursor) {
+        //1. 解析游标，空游标表示第一页
+        double afterDistance = -1;
+        long afterId = Long.MIN_VALUE;
+        if (StrUtil.isNotBlank(cursor)) {
+            try {
+                String[] parts = Base64.decodeStr(cursor).split(":");
+                afterDistance = Double.parseDouble(parts[0]);
+                afterId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                return Result.fail("无效的游标");
+            }
+        }
+        //2. 查询排在游标之后的size+1个店铺，多查的一个只用来判断是否有下一页，索引还没加载好时查询redis
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<ShopGeoIndex.Hit> hits = shopGeoIndex.search(typeId.longValue(), x, y, 5000, afterDistance, afterId, 0, size + 1);
+        if (hits == null) {
+            hits = searchAfterFromRedis(typeId, x, y, afterDistance, afterId, size + 1);
+        }
+        boolean hasMore = hits.size() > size;
+        if (hasMore) {
+            hits = hits.subList(0, size);
+        }
+        //3. 根据id查询shop
+        List<Long> ids = new ArrayList<>(hits.size());
+        HashMap<String, Distance> distanceMap = new HashMap<>(hits.size());
+        for (ShopGeoIndex.Hit hit : hits) {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId().toString(), new Distance(hit.getDistance()));
+        }
+        CursorResult result = new CursorResult();
+        result.setList(queryShopsWithDistance(ids, distanceMap));
+        //4. 还有下一页时才返回游标，游标为最后一个店铺的 距离:id
+        if (hasMore) {
+            ShopGeoIndex.Hit last = hits.get(size - 1);
+            result.setCursor(Base64.encodeUrlSafe(last.getDistance() + ":" + last.getId()));
+        }
+        return Result.ok(result);
+    }
+
+    /**
+     * 按游标查询某个类型的店铺，按id排序，游标中记录了上一页最后一个店铺的id
+     */
+    @Override
+    public Result queryShopByTypeAfter(Integer typeId, String cursor) {
+        //1. 解析游标，空游标表示第一页
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        //2. WHERE type_id = ? AND id > ? ORDER BY id LIMIT size+1，走(type_id, id)索引，不查询总数
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .gt(after != null, "id", after == null ? null : after.getId())
+                .orderByAsc("id")
+                .last("limit " + (size + 1))
+                .list();
+        return Result.ok(KeysetCursor.page(shops, size, Shop::getId, Shop::getId));
+    }
+
+    /**
+     * 从redis查询范围内的全部店铺，在内存中找出排在游标之后的一页，只在本地索引加载完成之前使用
+     */
+    private List<ShopGeoIndex.Hit> searchAfterFromRedis(Integer typeId, double x, double y,
+                                                        double afterDistance, long afterId, int size) {
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                SHOP_GEO_KEY + typeId,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(5000),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending());
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        List<ShopGeoIndex.Hit> hits = new ArrayList<>();
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results.getContent()) {
+            double distance = result.getDistance().getValue();
+            long id = Long.parseLong(result.getContent().getName());
+            if (distance > afterDistance || (distance == afterDistance && id > afterId)) {
+                hits.add(new ShopGeoIndex.Hit(id, distance));
+            }
+        }
+        hits.sort(Comparator.comparing(ShopGeoIndex.Hit::getDistance).thenComparing(ShopGeoIndex.Hit::getId));
+        return hits.size() > size ? new ArrayList<>(hits.subList(0, size)) : hits;
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        if (current < 1) {
+            return Result.fail("页码必须大于0");
+        }
+        //1. 有关键字时查询名称索引，结果按相关度排序
+        if (StrUtil.isNotBlank(name)) {
+            int skip = (int) Math.min((long) (current - 1) * SystemConstants.MAX_PAGE_SIZE, Integer.MAX_VALUE);
+            List<Long> ids = shopNameIndex.search(name, skip, SystemConstants.MAX_PAGE_SIZE);
+            if (ids != null) {
+                if (ids.isEmpty()) {
+                    return Result.ok(Collections.emptyList());
+                }
+                return Result.ok(cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::listByIds, Shop::getId,
+                        CacheOptions.of(CacheMode.TTL, CACHE_SHOP_TTL, TimeUnit.MINUTES).setLocalCache(true).setBulkhead("shop")));
+            }
+        }
+        //2. 没有关键字或索引还没加载好，查询数据库
+        Page<Shop> page = query()
+                .like(StrUtil.isNotBlank(name), "name", name)
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
+        return Result.ok(page.getRecords());
+    }
+
+    @Override
+    public Result suggestShopName(String prefix, Integer size) {
+        if (StrUtil.isBlank(prefix)) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Shop> shops = shopNameIndex.suggest(prefix, Math.min(size, SystemConstants.MAX_PAGE_SIZE));
+        return Result.ok(shops == null ? Collections.emptyList() : shops);
+    }
+
+    private List<Shop> queryShopsWithDistance(List<Long> ids, Map<String, Distance> distanceMap) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //批量查询店铺缓存，未命中的店铺一次性查询数据库，结果与ids的顺序一致
+        List<Shop> cachedShops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::listByIds, Shop::getId,
+                CacheOptions.of(CacheMode.TTL, CACHE_SHOP_TTL, TimeUnit.MINUTES).setLocalCache(true).setBulkhead("shop"));
+        List<Shop> shops = new ArrayList<>(cachedShops.size());
+        for (Shop cachedShop : cachedShops) {
+            //缓存中的对象是共享的，拷贝一份再设置距离
+            Shop shop = BeanUtil.copyProperties(cachedShop, Shop.class);
             //设置shop的举例属性，从distanceMap中根据shopId查询
             shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+            shops.add(shop);
         }
-        //6. 返回
-        return Result.ok(shops);
+        return shops;
     }
 }
@@ -1,10 +1,17 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.ResponseCacheManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+
+import static com.hmdp.utils.SystemConstants.SHOP_TYPE_LIST_CACHE;
 
 /**
  * <p>
@@ -17,4 +24,27 @@ import org.springframework.stereotype.Service;
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private ResponseCacheManager responseCacheManager;
+
+    @Override
+    @Transactional
+    public Result saveShopType(ShopType shopType) {
+        save(shopType);
+        //事务提交后清除所有节点的店铺类型列表响应缓存
+        responseCacheManager.publishEvict(SHOP_TYPE_LIST_CACHE, null);
+        return Result.ok(shopType.getId());
+    }
+
+    @Override
+    @Transactional
+    public Result updateShopType(ShopType shopType) {
+        if (shopType.getId() == null) {
+            return Result.fail("店铺类型id不能为空");
+        }
+        updateById(shopType);
+        //事务提交后清除所有节点的店铺类型列表响应缓存
+        responseCacheManager.publishEvict(SHOP_TYPE_LIST_CACHE, null);
+        return Result.ok();
+    }
 }
@@ -1,7 +1,6 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -12,23 +11,31 @@ import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMode;
+import com.hmdp.utils.CacheOptions;
+import com.hmdp.utils.CacheSerializer;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+
 /**
  * <p>
  * 服务实现类
@@ -44,6 +51,46 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    @Resource
+    private CacheSerializer cacheSerializer;
+
+    /**
+     * 先查缓存，并发查询同一个用户时只查一次数据库
+     * 缓存中的用户不包含手机号和密码，需要这两个字段时直接查询数据库
+     */
+    @Override
+    public User getById(Serializable id) {
+        return cacheClient.query(CACHE_USER_KEY, id, User.class, this::loadPublicUser,
+                CacheOptions.of(CacheMode.TTL, CACHE_USER_TTL, TimeUnit.MINUTES));
+    }
+
+    /**
+     * 修改用户之后删除缓存
+     */
+    @Override
+    public boolean updateById(User user) {
+        boolean success = super.updateById(user);
+        if (success) {
+            cacheClient.evict(CACHE_USER_KEY + user.getId());
+        }
+        return success;
+    }
+
+    private User loadPublicUser(Serializable id) {
+        User user = super.getById(id);
+        if (user != null) {
+            user.setPhone(null);
+            user.setPassword(null);
+        }
+        return user;
+    }
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         //1.校验手机号
@@ -84,21 +131,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user = createUserWithPhone(phone);
         }
 
-        //5.将用户信息存入redis
+        //5.将用户信息序列化后存入redis，并设置有效期
         String token = UUID.randomUUID(true).toString(true);
-        String tokenKey = "login:user" + token;
+        String tokenKey = LOGIN_USER_KEY + token;
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-//        HashMap<String, String> userMap = new HashMap<>();
-//        userMap.put("icon", userDTO.getIcon());
-//        userMap.put("id", String.valueOf(userDTO.getId()));
-//        userMap.put("nickName", userDTO.getNickName());
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                        .setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
-        //设置有效期
-        stringRedisTemplate.expire(tokenKey, 30, TimeUnit.MINUTES);
+        cacheRedisTemplate.opsForValue().set(tokenKey, cacheSerializer.serialize(userDTO), 30, TimeUnit.MINUTES);
         return Result.ok(token);
     }
 
@@ -118,6 +155,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         user.setNickName("user_" + RandomUtil.randomString(8));
         //保存到数据库
         save(user);
+        //查询不存在的用户时缓存了空值，注册之后删除
+        cacheClient.evict(CACHE_USER_KEY + user.getId());
         return user;
     }
 
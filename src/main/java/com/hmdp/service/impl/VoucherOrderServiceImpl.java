@@ -1,37 +1,80 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.dto.WaitingRoomStatus;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.RedisStreamQueue;
+import com.hmdp.utils.SeckillRateLimiter;
+import com.hmdp.utils.SeckillSoldOutFlags;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.SeckillVoucherMeta;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.UserHolder;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_MAX_SHARDS;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
 
 /**
  * <p>
  * 服务实现类
+ * 秒杀请求只执行一次lua脚本，资格校验、扣减redis库存和写入订单stream原子地完成，
+ * 工作线程通过消费者组批量读取订单，按优惠券合并写入数据库，提交后再ack；宕机留下的未确认订单由恢复任务认领后重新处理
  * </p>
  *
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    //一次最多读取的订单数，也是合并写入的批大小
+    private static final int READ_COUNT = 100;
+    private static final Duration READ_BLOCK = Duration.ofSeconds(2);
+    //投递次数达到上限的订单不再重试，归还redis库存后丢弃
+    private static final long MAX_DELIVERIES = 5;
+
     @Resource
     private SeckillVoucherServiceImpl seckillVoucherService;
 
@@ -42,88 +85,502 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private RedissonClient redissonClient;
+    private SeckillSoldOutFlags seckillSoldOutFlags;
+
+    @Resource
+    private SeckillStockShards seckillStockShards;
+
+    @Resource
+    private SeckillVoucherMeta seckillVoucherMeta;
+
+    @Resource
+    private SeckillRateLimiter seckillRateLimiter;
+
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    //事务代理，工作线程通过它调用createVoucherOrder
+    @Lazy
+    @Resource
+    private IVoucherOrderService proxy;
+
+    @Value("${hmdp.seckill.order.workers:4}")
+    private int workers;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    @Value("${hmdp.seckill.order.consumer:}")
+    private String consumer;
+
+    @Value("${hmdp.seckill.order.claim-idle:30000}")
+    private long claimIdle;
+
+    @Value("${hmdp.seckill.order.drain-timeout:30}")
+    private long drainTimeout;
+
+    private static final DefaultRedisScript<List> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<List> SECKILL_SHARD_SCRIPT;
+    private static final DefaultRedisScript<Long> ROLLBACK_SCRIPT;
 
     static {
-        SECKILL_SCRIPT = new DefaultRedisScript();
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
+        SECKILL_SCRIPT.setResultType(List.class);
+        SECKILL_SHARD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SECKILL_SHARD_SCRIPT.setResultType(List.class);
+        ROLLBACK_SCRIPT = new DefaultRedisScript<>();
+        ROLLBACK_SCRIPT.setLocation(new ClassPathResource("seckill_rollback.lua"));
+        ROLLBACK_SCRIPT.setResultType(Long.class);
+    }
+
+    //第一个是不分片的订单stream，之后依次是所有可能的分片stream，分片数不超过SECKILL_MAX_SHARDS
+    private final List<RedisStreamQueue> orderQueues = new ArrayList<>();
+    private ExecutorService orderExecutor;
+    //关闭时置为false，工作线程处理完手上的订单后退出，没读取的订单留在stream中
+    private volatile boolean running;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        //消费者名称在节点内唯一，默认使用 进程号@主机名
+        if (StrUtil.isBlank(consumer)) {
+            consumer = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        //每张优惠券按创建时的分片数写入，可能大于本节点配置的分片数，所有分片的stream都要消费和恢复
+        orderQueues.add(new RedisStreamQueue(stringRedisTemplate, SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP));
+        for (int i = 0; i < SECKILL_MAX_SHARDS; i++) {
+            orderQueues.add(new RedisStreamQueue(stringRedisTemplate, SeckillStockShards.streamKey(i), SECKILL_ORDER_GROUP));
+        }
+        orderQueues.forEach(RedisStreamQueue::createGroup);
+        //不分片的stream由workers个线程消费，配置的每个分片的stream各由一个线程阻塞读取，其余分片由一个线程轮询
+        int shards = seckillStockShards.configuredShards();
+        boolean sweep = shards < SECKILL_MAX_SHARDS;
+        orderExecutor = Executors.newFixedThreadPool(workers + shards + (sweep ? 1 : 0), r -> new Thread(r, "voucher-order"));
+        running = true;
+        for (int i = 1; i <= workers; i++) {
+            String name = consumer + "-" + i;
+            orderExecutor.execute(() -> consumeOrders(orderQueues.get(0), name));
+        }
+        for (int i = 1; i <= shards; i++) {
+            RedisStreamQueue queue = orderQueues.get(i);
+            orderExecutor.execute(() -> consumeOrders(queue, consumer));
+        }
+        if (sweep) {
+            orderExecutor.execute(() -> sweepOrders(orderQueues.subList(shards + 1, orderQueues.size())));
+        }
+    }
+
+    @Override
+    public Result joinWaitingRoom(Long voucherId) {
+        SeckillVoucherMeta.Meta meta = seckillVoucherMeta.get(voucherId);
+        if (!meta.waitingRoom()) {
+            return Result.fail("该秒杀券不需要排队");
+        }
+        if (!seckillWaitingRoom.enabled()) {
+            return Result.fail("等候室暂不可用");
+        }
+        if (meta.ended(System.currentTimeMillis())) {
+            return Result.fail("秒杀已经结束");
+        }
+        return Result.ok(seckillWaitingRoom.join(voucherId, UserHolder.getUser().getId(), meta));
     }
 
     @Override
-    public Result seckillVoucher(Long voucherId) {
-
-        //1. 执行lua脚本
-        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
-                Collections.emptyList(), voucherId.toString(),
-                UserHolder.getUser().getId().toString());
-        //2. 判断返回值，并返回错误信息
-        if (result.intValue() != 0) {
-            return Result.fail(result.intValue() == 1 ? "库存不足" : "不能重复下单");
-        }
-        long orderId = redisIdWorker.nextId("order");
-
-        // todo 基于阻塞队列实现异步
-
-        return Result.ok(orderId);
-//        Long userId = UserHolder.getUser().getId();
-//        //创建锁对象(新增代码)
-////        SimpleRedisLock lock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
-//        RLock redisLock = redissonClient.getLock("order:" + userId);
-//        //获取锁对象
-////        boolean isLock = lock.tryLock(1200);
-//        boolean isLock = redisLock.tryLock();
-//        //加锁失败
-//        if (!isLock) {
-//            return Result.fail("不允许重复下单");
-//        }
-//        try {
-//            //获取代理对象(事务)
-//            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-//            return proxy.createVoucherOrder(voucherId);
-//        } finally {
-//            //释放锁
-//            redisLock.unlock();
-//        }
+    public Result pollWaitingRoom(Long voucherId, String ticket) {
+        SeckillVoucherMeta.Meta meta = seckillVoucherMeta.get(voucherId);
+        if (!meta.waitingRoom()) {
+            return Result.fail("该秒杀券不需要排队");
+        }
+        WaitingRoomStatus status = seckillWaitingRoom.poll(voucherId, UserHolder.getUser().getId(), ticket, meta);
+        if (status == null) {
+            return Result.fail("无效的排队凭证");
+        }
+        return Result.ok(status);
     }
 
-    @Transactional
     @Override
-    public Result createVoucherOrder(Long voucherId) {
-        //一人一单逻辑
+    public Result seckillVoucher(Long voucherId, String admissionToken) {
         Long userId = UserHolder.getUser().getId();
-        // 5.1.查询订单
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        // 5.2.判断是否存在
-        if (count > 0) {
-            // 用户已经购买过了
-            return Result.fail("用户已经购买过一次！");
+        //1. 按本地缓存的元数据校验秒杀时间，本节点已知售罄的直接返回，都不访问redis
+        LocalDateTime now = LocalDateTime.now();
+        SeckillVoucherMeta.Meta meta = seckillVoucherMeta.get(voucherId);
+        long nowMillis = SeckillVoucherMeta.toMillis(now);
+        if (meta.notStarted(nowMillis)) {
+            return Result.fail("秒杀尚未开始");
+        }
+        if (meta.ended(nowMillis)) {
+            return Result.fail("秒杀已经结束");
+        }
+        //开启等候室的秒杀券必须带有入场令牌，令牌在本地校验
+        if (meta.waitingRoom() && !seckillWaitingRoom.admitted(voucherId, userId, admissionToken)) {
+            return Result.fail("请先排队");
+        }
+        if (seckillSoldOutFlags.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        //2. 本地限流，先限制单个用户的频率，再用本地令牌桶拦截超出全局速率的请求
+        if (seckillRateLimiter.userLimited(voucherId, userId, meta)) {
+            return Result.fail("请求过于频繁，请稍后再试");
+        }
+        if (seckillRateLimiter.voucherLimited(voucherId, meta)) {
+            return Result.fail("活动太火爆，请稍后再试");
+        }
+        //3. 执行lua脚本，校验时间和资格、全局令牌桶限流、扣减库存、生成订单id的序列号并写入订单stream，时间以redis为准
+        int home = seckillStockShards.homeShard(voucherId, userId);
+        List<?> result = home < 0
+                ? stringRedisTemplate.execute(SECKILL_SCRIPT,
+                        Collections.emptyList(), voucherId.toString(), userId.toString(),
+                        redisIdWorker.counterKey("order", now), String.valueOf(now.toEpochSecond(ZoneOffset.UTC)),
+                        String.valueOf(SeckillStockShards.SEQ_STRIDE))
+                : seckillShard(voucherId, userId, home, now);
+        //4. 判断返回值，并返回错误信息，库存不足时通知所有节点标记售罄
+        int code = ((Long) result.get(0)).intValue();
+        if (code == 1) {
+            seckillSoldOutFlags.publishSoldOut(voucherId);
+            return Result.fail("库存不足");
+        }
+        if (code == 2) {
+            return Result.fail("不能重复下单");
+        }
+        if (code == 3) {
+            return Result.fail("秒杀尚未开始");
+        }
+        if (code == 4) {
+            return Result.fail("秒杀已经结束");
+        }
+        if (code == 5) {
+            return Result.fail("活动太火爆，请稍后再试");
+        }
+        if (code != 0) {
+            return Result.fail("系统繁忙，请稍后再试");
+        }
+        //5. 订单已经写入stream，由工作线程异步写入数据库
+        return Result.ok(redisIdWorker.toId(now, (Long) result.get(1)));
+    }
+
+    /**
+     * 在用户所在的分片秒杀，分片库存用完时向兄弟分片借库存后重试，所有分片都用完才算售罄
+     */
+    private List<?> seckillShard(Long voucherId, Long userId, int home, LocalDateTime now) {
+        List<String> keys = seckillStockShards.scriptKeys(voucherId, home, redisIdWorker, now);
+        int shards = seckillStockShards.shardsOf(voucherId);
+        //借到的库存可能被同一分片的其它用户抢走，最多重试分片数次
+        for (int attempt = 0; attempt < shards; attempt++) {
+            List<?> result = stringRedisTemplate.execute(SECKILL_SHARD_SCRIPT, keys,
+                    voucherId.toString(), userId.toString(), String.valueOf(now.toEpochSecond(ZoneOffset.UTC)),
+                    String.valueOf(SeckillStockShards.SEQ_STRIDE), String.valueOf(home + 1), String.valueOf(shards));
+            if (((Long) result.get(0)).intValue() != 1 || !seckillStockShards.borrow(voucherId, home)) {
+                return result;
+            }
+        }
+        //还有库存但是一直没有抢到，不能标记售罄
+        return Collections.singletonList(-1L);
+    }
+
+    private void consumeOrders(RedisStreamQueue orderQueue, String name) {
+        while (running) {
+            try {
+                //1. 读取新的订单，没有订单时阻塞等待
+                List<MapRecord<String, Object, Object>> records = orderQueue.read(name, READ_COUNT, READ_BLOCK);
+                //2. 写入数据库，成功的订单批量确认，失败的留在pending-list中等待恢复任务重试
+                orderQueue.ack(handleRecords(records));
+            } catch (Exception e) {
+                log.error("读取订单stream失败", e);
+                sleep(1000);
+            }
+        }
+    }
+
+    /**
+     * 轮询本节点没有配置的分片stream，这些stream只在其它节点的分片数更大或调小过分片数时才有订单，不占用阻塞连接
+     */
+    private void sweepOrders(List<RedisStreamQueue> queues) {
+        while (running) {
+            boolean idle = true;
+            for (RedisStreamQueue orderQueue : queues) {
+                try {
+                    List<MapRecord<String, Object, Object>> records = orderQueue.read(consumer, READ_COUNT);
+                    if (!records.isEmpty()) {
+                        idle = false;
+                        orderQueue.ack(handleRecords(records));
+                    }
+                } catch (Exception e) {
+                    log.error("读取订单stream失败", e);
+                }
+            }
+            if (idle) {
+                sleep(READ_BLOCK.toMillis());
+            }
+        }
+    }
+
+    /**
+     * 恢复投递后长时间没有确认的订单，包括宕机节点留下的和写入失败的
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.order.recover-interval:5000}")
+    public void recoverPending() {
+        if (!running) {
+            return;
+        }
+        for (RedisStreamQueue orderQueue : orderQueues) {
+            recoverPending(orderQueue);
+        }
+    }
+
+    private void recoverPending(RedisStreamQueue orderQueue) {
+        try {
+            Duration minIdle = Duration.ofMillis(claimIdle);
+            List<RecordId> retryIds = new ArrayList<>();
+            List<RecordId> deadIds = new ArrayList<>();
+            for (PendingMessage message : orderQueue.idle(minIdle, 100)) {
+                (message.getTotalDeliveryCount() >= MAX_DELIVERIES ? deadIds : retryIds).add(message.getId());
+            }
+            String name = consumer + "-recovery";
+            //1. 认领超时的订单重新处理，同一条订单只会被一个消费者认领成功
+            List<MapRecord<String, Object, Object>> records = orderQueue.claim(name, minIdle, retryIds);
+            List<MapRecord<String, Object, Object>> unavailable = new ArrayList<>();
+            List<RecordId> doneIds = new ArrayList<>(handleRecords(records, unavailable));
+            recovered.add(records.size());
+            //2. 多次处理失败的订单最后再写入一次，仍然失败的归还库存和下单资格后确认
+            List<MapRecord<String, Object, Object>> deadRecords = orderQueue.claim(name, minIdle, deadIds);
+            Set<RecordId> handledIds = new HashSet<>(handleRecords(deadRecords, unavailable));
+            doneIds.addAll(handledIds);
+            for (MapRecord<String, Object, Object> record : unavailable) {
+                handledIds.add(record.getId());
+            }
+            for (MapRecord<String, Object, Object> record : deadRecords) {
+                if (handledIds.contains(record.getId())) {
+                    continue;
+                }
+                VoucherOrder voucherOrder = toVoucherOrder(record);
+                //订单可能已经写入，只是确认失败，这种情况不能归还库存
+                if (!orderExists(voucherOrder)) {
+                    log.error("订单多次写入失败，已放弃, 订单: {}", voucherOrder);
+                    rollback(voucherOrder);
+                    dropped.increment();
+                }
+                doneIds.add(record.getId());
+            }
+            orderQueue.ack(doneIds);
+            //3. 数据库暂时不可用导致的失败不计入投递次数，重新入队后投递次数从零开始，故障期间的订单不会被放弃
+            orderQueue.requeue(unavailable);
+        } catch (DataAccessException e) {
+            log.error("恢复未确认的订单失败", e);
+        }
+    }
+
+    /**
+     * 处理一批订单，同一张优惠券的订单合并写入：一条多行INSERT，一次扣减N个库存
+     *
+     * @return 可以确认的订单，包括写入成功的和不需要再写入的
+     */
+    private List<RecordId> handleRecords(List<MapRecord<String, Object, Object>> records) {
+        return handleRecords(records, new ArrayList<>());
+    }
+
+    /**
+     * 处理一批订单，数据库访问异常的订单加入unavailable
+     *
+     * @return 可以确认的订单，包括写入成功的和不需要再写入的
+     */
+    private List<RecordId> handleRecords(List<MapRecord<String, Object, Object>> records,
+                                         List<MapRecord<String, Object, Object>> unavailable) {
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //1. 按优惠券分组
+        Map<Long, List<MapRecord<String, Object, Object>>> groups = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Long voucherId = Long.valueOf(record.getValue().get("voucherId").toString());
+            groups.computeIfAbsent(voucherId, k -> new ArrayList<>()).add(record);
+        }
+        //2. 每张优惠券一个事务，一张优惠券失败不影响其它优惠券
+        List<RecordId> doneIds = new ArrayList<>(records.size());
+        inFlight.addAndGet(records.size());
+        try {
+            for (Map.Entry<Long, List<MapRecord<String, Object, Object>>> entry : groups.entrySet()) {
+                List<MapRecord<String, Object, Object>> group = entry.getValue();
+                List<VoucherOrder> orders = new ArrayList<>(group.size());
+                for (MapRecord<String, Object, Object> record : group) {
+                    orders.add(toVoucherOrder(record));
+                }
+                try {
+                    if (handleVoucherOrders(entry.getKey(), orders)) {
+                        for (MapRecord<String, Object, Object> record : group) {
+                            doneIds.add(record.getId());
+                        }
+                    }
+                } catch (DataAccessException e) {
+                    unavailable.addAll(group);
+                }
+            }
+        } finally {
+            inFlight.addAndGet(-records.size());
+        }
+        return doneIds;
+    }
+
+    private VoucherOrder toVoucherOrder(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = record.getValue();
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(redisIdWorker.toId(Long.parseLong(value.get("time").toString()),
+                Long.parseLong(value.get("seq").toString())));
+        voucherOrder.setUserId(Long.valueOf(value.get("userId").toString()));
+        voucherOrder.setVoucherId(Long.valueOf(value.get("voucherId").toString()));
+        return voucherOrder;
+    }
+
+    /**
+     * 写入同一张优惠券的一批订单
+     *
+     * @return 是否可以确认这批订单，写入失败时返回false，等待恢复任务重试
+     * @throws DataAccessException 数据库暂时不可用
+     */
+    private boolean handleVoucherOrders(Long voucherId, List<VoucherOrder> orders) {
+        try {
+            int inserted = proxy.createVoucherOrders(voucherId, orders);
+            if (inserted >= 0) {
+                persisted.add(inserted);
+                batches.increment();
+                return true;
+            }
+            //数据库库存不够整批扣减，说明和redis不一致，逐个写入，能写入多少是多少
+            log.warn("数据库库存不足以整批扣减，改为逐个写入, 优惠券id: {}, 订单数: {}", voucherId, orders.size());
+            for (VoucherOrder voucherOrder : orders) {
+                if (proxy.createVoucherOrder(voucherOrder)) {
+                    persisted.increment();
+                } else if (!orderExists(voucherOrder)) {
+                    //用户已经收到下单成功，但订单没有写入，归还redis库存和下单资格
+                    log.error("订单写入失败，已归还库存, 订单id: {}, 订单: {}", voucherOrder.getId(), voucherOrder);
+                    rollback(voucherOrder);
+                    failed.increment();
+                }
+            }
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("数据库暂时不可用，稍后重试, 优惠券id: {}, 订单数: {}", voucherId, orders.size(), e);
+            failed.add(orders.size());
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("保存订单失败，稍后重试, 优惠券id: {}, 订单数: {}", voucherId, orders.size(), e);
+            failed.add(orders.size());
+            return false;
+        }
+    }
+
+    @Transactional
+    @Override
+    public int createVoucherOrders(Long voucherId, List<VoucherOrder> orders) {
+        //1. 一条INSERT IGNORE写入整批订单，(user_id, voucher_id)唯一索引保证一人一单，重复投递的订单被忽略
+        int inserted = getBaseMapper().insertIgnoreBatch(orders);
+        if (inserted == 0) {
+            return 0;
+        }
+        //2. 按实际写入的数量一次扣减库存，热点行只加锁一次
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - " + inserted)
+                .eq("voucher_id", voucherId).ge("stock", inserted)
+                .update();
+        if (!success) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return -1;
+        }
+        return inserted;
+    }
+
+    @Transactional
+    @Override
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
+        // 5.一人一单，用户已经购买过时唯一索引冲突，插入被忽略
+        if (getBaseMapper().insertIgnoreBatch(Collections.singletonList(voucherOrder)) == 0) {
+            log.warn("用户已经购买过一次, 订单: {}", voucherOrder);
+            return false;
         }
 
         // 6.扣减库存
         boolean success = seckillVoucherService.update()
                 .setSql("stock = stock - 1") // set stock = stock - 1
-                .eq("voucher_id", voucherId).gt("stock", 0) // where id = ? and stock > 0
+                .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0) // where id = ? and stock > 0
                 .update();
         if (!success) {
-            // 扣减失败
-            return Result.fail("库存不足！");
+            // 扣减失败，撤销插入的订单
+            log.warn("库存不足, 订单: {}", voucherOrder);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
         }
+        return true;
+    }
 
-        // 7.创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 7.1.订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 7.2.用户id
-        voucherOrder.setUserId(userId);
-        // 7.3.代金券id
-        voucherOrder.setVoucherId(voucherId);
-        save(voucherOrder);
-
-        // 7.返回订单id
-        return Result.ok(orderId);
+    /**
+     * 用户是否已经有这张优惠券的订单，重复投递的订单id相同，也可能是同一用户的另一条订单，都不能归还库存
+     */
+    private boolean orderExists(VoucherOrder voucherOrder) {
+        return getById(voucherOrder.getId()) != null || query()
+                .eq("user_id", voucherOrder.getUserId())
+                .eq("voucher_id", voucherOrder.getVoucherId())
+                .count() > 0;
+    }
+
+    private void rollback(VoucherOrder voucherOrder) {
+        Long voucherId = voucherOrder.getVoucherId();
+        int shard = seckillStockShards.homeShard(voucherId, voucherOrder.getUserId());
+        Long restored = stringRedisTemplate.execute(ROLLBACK_SCRIPT,
+                Arrays.asList(SeckillStockShards.stockKey(voucherId, shard), SeckillStockShards.orderKey(voucherId, shard)),
+                voucherOrder.getUserId().toString());
+        //归还了库存，清除售罄标记
+        if (restored != null && restored == 1) {
+            seckillSoldOutFlags.publishRestock(voucherOrder.getVoucherId());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 订单队列的运行指标
+     */
+    @Override
+    public Map<String, Object> orderQueueStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long queueDepth = 0;
+        long pending = 0;
+        for (RedisStreamQueue orderQueue : orderQueues) {
+            queueDepth += orderQueue.size();
+            pending += orderQueue.pendingCount();
+        }
+        stats.put("queueDepth", queueDepth);
+        stats.put("pending", pending);
+        stats.put("streams", orderQueues.size());
+        stats.put("inFlight", inFlight.get());
+        stats.put("workers", workers);
+        stats.put("persisted", persisted.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failed", failed.sum());
+        stats.put("recovered", recovered.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+
+    /**
+     * 停止读取新订单，等待工作线程处理完手上的订单，未读取的订单留在stream中由下次启动的消费者处理
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        orderExecutor.shutdown();
+        if (!orderExecutor.awaitTermination(drainTimeout, TimeUnit.SECONDS)) {
+            log.warn("关闭时仍有{}个订单在处理，将由恢复任务重新处理", inFlight.get());
+            orderExecutor.shutdownNow();
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
@@ -7,12 +8,28 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMode;
+import com.hmdp.utils.CacheOptions;
+import com.hmdp.utils.ResponseCacheManager;
+import com.hmdp.utils.SeckillSoldOutFlags;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.SeckillVoucherMeta;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_LIST_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_LIST_TTL;
+import static com.hmdp.utils.SystemConstants.VOUCHER_LIST_CACHE;
 
 /**
  * <p>
@@ -31,12 +48,47 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ResponseCacheManager responseCacheManager;
+
+    @Resource
+    private SeckillSoldOutFlags seckillSoldOutFlags;
+
+    @Resource
+    private SeckillStockShards seckillStockShards;
+
+    @Resource
+    private SeckillVoucherMeta seckillVoucherMeta;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 查询优惠券信息，缓存中的秒杀库存是写入缓存时的库存
+        List<Voucher> vouchers = cacheClient.queryList(CACHE_VOUCHER_LIST_KEY, shopId, Voucher.class,
+                getBaseMapper()::queryVoucherOfShop,
+                CacheOptions.of(CacheMode.MUTEX, CACHE_VOUCHER_LIST_TTL, TimeUnit.MINUTES));
+        if (vouchers == null) {
+            return Result.ok(vouchers);
+        }
+        // 秒杀库存以redis中的实时库存为准，复制后再修改，不改动本地缓存中的对象
+        List<Voucher> result = new ArrayList<>(vouchers.size());
+        for (Voucher voucher : vouchers) {
+            Integer stock = voucher.getStock() == null ? null : seckillStockShards.stock(voucher.getId());
+            result.add(stock == null ? voucher : BeanUtil.copyProperties(voucher, Voucher.class).setStock(stock));
+        }
         // 返回结果
-        return Result.ok(vouchers);
+        return Result.ok(result);
+    }
+
+    @Override
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 删除店铺的优惠券列表缓存
+        cacheClient.evict(CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+        responseCacheManager.publishEvict(VOUCHER_LIST_CACHE, voucher.getShopId());
     }
 
     @Override
@@ -51,7 +103,42 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀优惠券信息到Reids，Key名中包含优惠券ID，Value为优惠券的剩余数量
-        stringRedisTemplate.opsForValue().set("seckill:stock:" + voucher.getId(), voucher.getStock().toString());
+        // 保存秒杀优惠券信息到Reids，Key名中包含优惠券ID，Value为优惠券的剩余数量，开启分片时拆分到各个分片
+        // 开始和结束时间、限流阈值、等候室的入场速率写入元数据
+        Map<String, String> meta = SeckillVoucherMeta.toHash(voucher.getBeginTime(), voucher.getEndTime(),
+                voucher.getRateLimit(), voucher.getUserRateLimit(), voucher.getWaitingRoomRate());
+        seckillStockShards.init(voucher.getId(), voucher.getStock(), meta);
+        seckillVoucherMeta.put(voucher.getId(), meta);
+        // 删除店铺的优惠券列表缓存，接口响应缓存在事务提交后清除
+        cacheClient.evict(CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+        responseCacheManager.publishEvict(VOUCHER_LIST_CACHE, voucher.getShopId());
+    }
+
+    @Override
+    @Transactional
+    public Result replenishSeckillStock(Long voucherId, Integer amount) {
+        if (amount == null || amount <= 0) {
+            return Result.fail("补充的库存必须大于0");
+        }
+        Voucher voucher = getById(voucherId);
+        // 增加数据库库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + amount)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (voucher == null || !success) {
+            return Result.fail("秒杀券不存在");
+        }
+        // 事务提交后再增加redis库存，redis中的库存不会多于数据库，然后清除各节点的售罄标记
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                seckillStockShards.addStock(voucherId, amount);
+                seckillSoldOutFlags.publishRestock(voucherId);
+            }
+        });
+        // 删除店铺的优惠券列表缓存，接口响应缓存由补充库存的消息清除
+        cacheClient.evict(CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+        return Result.ok();
     }
 }
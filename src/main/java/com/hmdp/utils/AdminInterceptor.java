@@ -0,0 +1,38 @@
+package com.hmdp.utils;
+
+
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+
+/**
+ * 管理接口拦截器，只放行配置的管理员，没有配置管理员时所有管理接口都不可用
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminIds;
+
+    public AdminInterceptor(Set<Long> adminIds) {
+        this.adminIds = adminIds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //登录拦截器已经拦截了未登录的请求，这里只判断是否是管理员
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            response.setStatus(401);
+            return false;
+        }
+        if (!adminIds.contains(user.getId())) {
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+
+}
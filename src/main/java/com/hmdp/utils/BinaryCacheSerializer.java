@@ -0,0 +1,153 @@
+package com.hmdp.utils;
+
+import com.hmdp.utils.codec.BlogCodec;
+import com.hmdp.utils.codec.ByteReader;
+import com.hmdp.utils.codec.ByteWriter;
+import com.hmdp.utils.codec.EntityCodec;
+import com.hmdp.utils.codec.ShopCodec;
+import com.hmdp.utils.codec.UserCodec;
+import com.hmdp.utils.codec.UserDTOCodec;
+import com.hmdp.utils.codec.VoucherCodec;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的二进制序列化，格式为：魔数 + 类型标识 + 版本号 + 字段
+ * 没有注册编码的类型交给fallback处理；读取时不以魔数开头的数据(升级前写入的json)也交给fallback
+ */
+public class BinaryCacheSerializer implements CacheSerializer {
+
+    //二进制数据的首字节，是utf-8的后续字节，json文本不可能以它开头
+    private static final int MAGIC = 0xB1;
+    private static final int TAG_LIST = 100;
+    private static final int TAG_REDIS_DATA = 101;
+
+    private final Map<Class<?>, EntityCodec<?>> codecsByType = new HashMap<>();
+    private final EntityCodec<?>[] codecsByTag = new EntityCodec<?>[TAG_LIST];
+    private final CacheSerializer fallback;
+
+    public BinaryCacheSerializer(CacheSerializer fallback) {
+        this.fallback = fallback;
+        register(new ShopCodec());
+        register(new BlogCodec());
+        register(new VoucherCodec());
+        register(new UserDTOCodec());
+        register(new UserCodec());
+    }
+
+    private void register(EntityCodec<?> codec) {
+        codecsByType.put(codec.type(), codec);
+        codecsByTag[codec.tag()] = codec;
+    }
+
+    @Override
+    public byte[] serialize(Object value) {
+        if (!supports(value)) {
+            return fallback.serialize(value);
+        }
+        ByteWriter writer = new ByteWriter(128);
+        writer.writeByte(MAGIC);
+        writeValue(value, writer);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <R> R deserialize(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return fallback.deserialize(bytes, type);
+        }
+        return type.cast(readValue(new ByteReader(bytes, 1)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> List<R> deserializeList(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return fallback.deserializeList(bytes, type);
+        }
+        return (List<R>) readValue(new ByteReader(bytes, 1));
+    }
+
+    @Override
+    public <R> R convert(Object data, Class<R> type) {
+        if (type.isInstance(data)) {
+            return type.cast(data);
+        }
+        //升级前写入的逻辑过期数据
+        return fallback.convert(data, type);
+    }
+
+    private static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] & 0xFF) == MAGIC;
+    }
+
+    private boolean supports(Object value) {
+        if (value instanceof RedisData) {
+            RedisData redisData = (RedisData) value;
+            return redisData.getExpireTime() != null && supports(redisData.getData());
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!supports(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value != null && codecsByType.containsKey(value.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value, ByteWriter writer) {
+        if (value instanceof RedisData) {
+            RedisData redisData = (RedisData) value;
+            writer.writeByte(TAG_REDIS_DATA);
+            writer.writeByte(1);
+            writer.writeVarLong(redisData.getExpireTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+            writeValue(redisData.getData(), writer);
+            return;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writer.writeByte(TAG_LIST);
+            writer.writeByte(1);
+            writer.writeVarLong(list.size());
+            for (Object element : list) {
+                writeValue(element, writer);
+            }
+            return;
+        }
+        EntityCodec<Object> codec = (EntityCodec<Object>) codecsByType.get(value.getClass());
+        writer.writeByte(codec.tag());
+        writer.writeByte(codec.version());
+        codec.write(value, writer);
+    }
+
+    private Object readValue(ByteReader reader) {
+        int tag = reader.readByte();
+        int version = reader.readByte();
+        if (tag == TAG_REDIS_DATA) {
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(ByteReader.toDateTime(reader.readVarLong()));
+            redisData.setData(readValue(reader));
+            return redisData;
+        }
+        if (tag == TAG_LIST) {
+            int size = (int) reader.readVarLong();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(reader));
+            }
+            return list;
+        }
+        EntityCodec<?> codec = tag < codecsByTag.length ? codecsByTag[tag] : null;
+        if (codec == null) {
+            throw new IllegalStateException("未知的缓存数据类型: " + tag);
+        }
+        return codec.read(reader, version);
+    }
+}
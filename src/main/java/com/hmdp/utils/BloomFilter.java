@@ -0,0 +1,70 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于位数组的布隆过滤器，元素为long类型的id
+ * 判断不存在则一定不存在，判断存在则可能存在
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望的误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(expectedInsertions, 1);
+        //最优位数 m = -n*ln(p)/(ln2)^2，最优哈希次数 k = m/n*ln2
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+        this.bitSize = (long) bits.length() << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void put(long value) {
+        long h1 = mix(value);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            setBit(index);
+        }
+    }
+
+    public boolean mightContain(long value) {
+        long h1 = mix(value);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBit(long index) {
+        int i = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(i);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(i, old, old | mask));
+    }
+
+    //murmur3的64位混淆函数
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
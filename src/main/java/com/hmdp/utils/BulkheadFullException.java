@@ -0,0 +1,11 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存未命中后加载数据库的并发已满，且没有可以兜底的旧数据
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    public BulkheadFullException(String key) {
+        super("数据库加载繁忙, key: " + key);
+    }
+}
@@ -0,0 +1,555 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_LOAD_PERMITS;
+import static com.hmdp.utils.RedisConstants.CACHE_LOAD_WAIT;
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_TTL;
+
+/**
+ * 通用的缓存工具，封装了旁路缓存、缓存空值、互斥锁重建和逻辑过期几种策略
+ * 同一节点内并发的未命中请求会合并为一次数据库查询，不同key的数据库加载按隔离舱限制并发，
+ * redis不可用时按未命中处理，由隔离舱保护数据库
+ */
+@Slf4j
+@Component
+public class CacheClient {
+
+    //缓存重建线程池，队列满了直接放弃重建，继续返回旧数据
+    private static final ExecutorService CACHE_REBUILD_EXECUTOR = new ThreadPoolExecutor(
+            2, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100));
+
+    //获取互斥锁失败后的重试次数和间隔
+    private static final int MUTEX_RETRY_TIMES = 20;
+    private static final long MUTEX_RETRY_INTERVAL = 50L;
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private CacheSerializer cacheSerializer;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    private final SingleFlight<String, Object> flight = new SingleFlight<>();
+
+    //每类数据一个隔离舱，限制同时查询数据库的线程数
+    private final ConcurrentHashMap<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 写入缓存，有效期会增加随机的抖动，避免大量key同时过期
+     */
+    public void set(String key, Object value, Long time, TimeUnit unit) {
+        cacheRedisTemplate.opsForValue().set(key, cacheSerializer.serialize(value),
+                jitter(unit.toSeconds(time)), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 以逻辑过期的方式写入缓存，redis中不设置过期时间，逻辑过期时间同样增加随机抖动
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(jitter(unit.toSeconds(time))));
+        cacheRedisTemplate.opsForValue().set(key, cacheSerializer.serialize(redisData));
+    }
+
+    /**
+     * 删除缓存，并通知所有节点清除本地缓存
+     */
+    public void evict(String... keys) {
+        cacheRedisTemplate.delete(Arrays.asList(keys));
+        for (String key : keys) {
+            localCache.publishEvict(key);
+        }
+    }
+
+    /**
+     * 查询单个对象
+     *
+     * @param keyPrefix  缓存key前缀
+     * @param id         id
+     * @param type       对象类型
+     * @param dbFallback 缓存未命中时查询数据库的逻辑
+     * @param options    缓存选项
+     * @return 对象，不存在时返回null
+     */
+    public <R, ID> R query(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, CacheOptions options) {
+        String key = keyPrefix + id;
+        boolean hot = false;
+        if (options.isHotKeyDetection()) {
+            //热点key优先从本地的热点缓存中获取
+            hotKeyDetector.record(key);
+            hot = hotKeyDetector.isHot(key);
+            if (hot) {
+                R value = localCache.getHot(key, type);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        Semaphore bulkhead = bulkhead(keyPrefix, options);
+        R value = options.getMode() == CacheMode.LOGICAL_EXPIRE
+                ? queryWithLogicalExpire(key, id, type, bulkhead, dbFallback, options)
+                : doQuery(key, id, type, bulkhead, bytes -> cacheSerializer.deserialize(bytes, type), dbFallback, options);
+        if (hot && value != null) {
+            localCache.putHot(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 查询列表，不支持逻辑过期模式
+     */
+    public <R, ID> List<R> queryList(String keyPrefix, ID id, Class<R> type, Function<ID, List<R>> dbFallback, CacheOptions options) {
+        if (options.getMode() == CacheMode.LOGICAL_EXPIRE) {
+            throw new UnsupportedOperationException("列表缓存不支持逻辑过期");
+        }
+        return doQuery(keyPrefix + id, id, List.class, bulkhead(keyPrefix, options),
+                bytes -> cacheSerializer.deserializeList(bytes, type), dbFallback, options);
+    }
+
+    /**
+     * 批量查询对象，依次查询本地缓存和redis(MGET)，未命中的id一次性从数据库查询并通过管道回填redis
+     *
+     * @param keyPrefix  缓存key前缀
+     * @param ids        id列表
+     * @param type       对象类型
+     * @param dbFallback 根据未命中的id批量查询数据库的逻辑
+     * @param idGetter   从对象中获取id，用于将数据库结果与id对应
+     * @param options    缓存选项，不支持逻辑过期模式
+     * @return 按ids顺序排列的对象，不存在的id会被跳过
+     */
+    public <R, ID> List<R> queryBatch(String keyPrefix, List<ID> ids, Class<R> type,
+                                      Function<List<ID>, ? extends Collection<R>> dbFallback,
+                                      Function<R, ID> idGetter, CacheOptions options) {
+        if (options.getMode() == CacheMode.LOGICAL_EXPIRE) {
+            throw new UnsupportedOperationException("批量查询不支持逻辑过期");
+        }
+        Map<ID, R> found = new HashMap<>(ids.size() * 2);
+        //1.查询本地缓存
+        List<ID> redisIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R value = options.isLocalCache() ? localCache.get(keyPrefix + id, type) : null;
+            if (value != null) {
+                found.put(id, value);
+            } else {
+                redisIds.add(id);
+            }
+        }
+        //2.一次MGET查询redis
+        List<ID> missIds = new ArrayList<>();
+        List<byte[]> values = multiGet(keyPrefix, redisIds);
+        for (int i = 0; i < redisIds.size(); i++) {
+            ID id = redisIds.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes == null) {
+                localCache.recordRedisMiss();
+                missIds.add(id);
+                continue;
+            }
+            localCache.recordRedisHit();
+            //空值说明数据库中也不存在
+            if (bytes.length > 0) {
+                R value = cacheSerializer.deserialize(bytes, type);
+                found.put(id, value);
+                if (options.isLocalCache()) {
+                    localCache.put(keyPrefix + id, value);
+                }
+            }
+        }
+        //3.未命中的id一次性查询数据库，并回填缓存
+        if (!missIds.isEmpty()) {
+            loadBatch(keyPrefix, missIds, type, dbFallback, idGetter, options, found);
+        }
+        //4.按传入的顺序排列
+        List<R> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            R value = found.get(id);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private <ID> List<byte[]> multiGet(String keyPrefix, List<ID> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            keys.add(keyPrefix + id);
+        }
+        try {
+            return cacheRedisTemplate.opsForValue().multiGet(keys);
+        } catch (DataAccessException e) {
+            log.warn("批量查询缓存失败, keyPrefix: {}", keyPrefix, e);
+            return null;
+        }
+    }
+
+    private <R, ID> void loadBatch(String keyPrefix, List<ID> missIds, Class<R> type,
+                                   Function<List<ID>, ? extends Collection<R>> dbFallback,
+                                   Function<R, ID> idGetter, CacheOptions options, Map<ID, R> found) {
+        Collection<R> loaded;
+        try {
+            loaded = loadFromDb(keyPrefix + missIds, missIds, bulkhead(keyPrefix, options), dbFallback);
+        } catch (BulkheadFullException e) {
+            //数据库繁忙，使用本地保留的旧数据
+            for (ID id : missIds) {
+                R stale = type.cast(staleOrThrow(keyPrefix + id, e));
+                found.put(id, stale);
+            }
+            return;
+        }
+        Map<String, R> backfill = new HashMap<>(missIds.size() * 2);
+        for (R value : loaded) {
+            ID id = idGetter.apply(value);
+            found.put(id, value);
+            backfill.put(keyPrefix + id, value);
+            if (options.isLocalCache()) {
+                localCache.put(keyPrefix + id, value);
+            }
+        }
+        List<String> nullKeys = new ArrayList<>();
+        if (options.getMode() != CacheMode.PASS_THROUGH) {
+            for (ID id : missIds) {
+                if (!found.containsKey(id)) {
+                    nullKeys.add(keyPrefix + id);
+                }
+            }
+        }
+        //通过管道一次性写入，每个key的有效期单独抖动
+        long ttl = options.getUnit().toSeconds(options.getTtl());
+        long nullTtl = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        try {
+            cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, R> entry : backfill.entrySet()) {
+                    connection.setEx(entry.getKey().getBytes(StandardCharsets.UTF_8), jitter(ttl),
+                            cacheSerializer.serialize(entry.getValue()));
+                }
+                for (String key : nullKeys) {
+                    connection.setEx(key.getBytes(StandardCharsets.UTF_8), jitter(nullTtl), new byte[0]);
+                }
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.warn("批量写入缓存失败, keyPrefix: {}", keyPrefix, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T, ID> T doQuery(String key, ID id, Class<?> type, Semaphore bulkhead, Function<byte[], T> decoder,
+                              Function<ID, T> dbFallback, CacheOptions options) {
+        //1.查询本地缓存
+        if (options.isLocalCache()) {
+            Object value = localCache.get(key, type);
+            if (value != null) {
+                return (T) value;
+            }
+        }
+        //2.查询redis
+        byte[] bytes = get(key);
+        if (bytes != null) {
+            localCache.recordRedisHit();
+            //命中的是空值，说明数据库中也不存在
+            if (bytes.length == 0) {
+                return null;
+            }
+            T value = decoder.apply(bytes);
+            if (options.isLocalCache()) {
+                localCache.put(key, value);
+            }
+            return value;
+        }
+        localCache.recordRedisMiss();
+        //3.未命中，同一节点内的并发请求只有一个去加载
+        try {
+            return (T) flight.execute(key, () -> {
+                if (options.getMode() == CacheMode.MUTEX) {
+                    return loadWithMutex(key, id, bulkhead, decoder, dbFallback, options);
+                }
+                return load(key, id, bulkhead, dbFallback, options);
+            });
+        } catch (BulkheadFullException e) {
+            return (T) staleOrThrow(key, e);
+        }
+    }
+
+    /**
+     * 获取互斥锁的线程查询数据库重建缓存，其余线程等待后重新查询缓存
+     */
+    private <T, ID> T loadWithMutex(String key, ID id, Semaphore bulkhead, Function<byte[], T> decoder,
+                                    Function<ID, T> dbFallback, CacheOptions options) {
+        String lockKey = lockKey(key, id, options);
+        for (int i = 0; i < MUTEX_RETRY_TIMES; i++) {
+            String token;
+            try {
+                token = tryLock(lockKey);
+            } catch (DataAccessException e) {
+                //redis不可用，无法加锁，直接交给隔离舱限流
+                return load(key, id, bulkhead, dbFallback, options);
+            }
+            if (token != null) {
+                try {
+                    //获取锁之后再检查一次缓存，可能已经被其它节点重建了
+                    byte[] bytes = get(key);
+                    if (bytes != null) {
+                        return bytes.length == 0 ? null : decoder.apply(bytes);
+                    }
+                    return load(key, id, bulkhead, dbFallback, options);
+                } finally {
+                    unlock(lockKey, token);
+                }
+            }
+            sleep(MUTEX_RETRY_INTERVAL);
+            byte[] bytes = get(key);
+            if (bytes != null) {
+                return bytes.length == 0 ? null : decoder.apply(bytes);
+            }
+        }
+        //等待超时，直接查询数据库
+        return loadFromDb(key, id, bulkhead, dbFallback);
+    }
+
+    private <T, ID> T load(String key, ID id, Semaphore bulkhead, Function<ID, T> dbFallback, CacheOptions options) {
+        T value = loadFromDb(key, id, bulkhead, dbFallback);
+        try {
+            if (value == null) {
+                //将空值写入redis，防止缓存穿透
+                if (options.getMode() != CacheMode.PASS_THROUGH) {
+                    setNull(key);
+                }
+                return null;
+            }
+            set(key, value, options.getTtl(), options.getUnit());
+        } catch (DataAccessException e) {
+            log.warn("写入缓存失败, key: {}", key, e);
+        }
+        //写入空值失败时也会走到这里，本地缓存不保存空值
+        if (value != null && options.isLocalCache()) {
+            localCache.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 在隔离舱内查询数据库，短时间内拿不到额度时拒绝本次查询
+     */
+    private <T, ID> T loadFromDb(String key, ID id, Semaphore bulkhead, Function<ID, T> dbFallback) {
+        boolean acquired = false;
+        try {
+            acquired = bulkhead.tryAcquire(CACHE_LOAD_WAIT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!acquired) {
+            throw new BulkheadFullException(key);
+        }
+        try {
+            return dbFallback.apply(id);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * 数据库加载被拒绝时返回本地保留的旧数据，旧数据不会回写redis
+     */
+    private Object staleOrThrow(String key, BulkheadFullException e) {
+        Object stale = localCache.getStale(key);
+        if (stale == null) {
+            throw e;
+        }
+        log.debug("数据库加载繁忙，返回旧数据, key: {}", key);
+        return stale;
+    }
+
+    /**
+     * 逻辑过期，过期后由一个线程异步重建，其余线程直接返回旧数据
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R queryWithLogicalExpire(String key, ID id, Class<R> type, Semaphore bulkhead,
+                                             Function<ID, R> dbFallback, CacheOptions options) {
+        if (options.isLocalCache()) {
+            R value = localCache.get(key, type);
+            if (value != null) {
+                return value;
+            }
+        }
+        //1.从redis查询缓存
+        byte[] bytes = get(key);
+        //2.未命中，说明还没有预热，直接查询数据库并写入
+        if (bytes == null) {
+            localCache.recordRedisMiss();
+            try {
+                return (R) flight.execute(key, () -> {
+                    R value = loadFromDb(key, id, bulkhead, dbFallback);
+                    try {
+                        if (value == null) {
+                            setNull(key);
+                            return null;
+                        }
+                        setWithLogicalExpire(key, value, options.getTtl(), options.getUnit());
+                    } catch (DataAccessException e) {
+                        log.warn("写入缓存失败, key: {}", key, e);
+                    }
+                    if (value != null && options.isLocalCache()) {
+                        localCache.put(key, value);
+                    }
+                    return value;
+                });
+            } catch (BulkheadFullException e) {
+                return (R) staleOrThrow(key, e);
+            }
+        }
+        localCache.recordRedisHit();
+        if (bytes.length == 0) {
+            return null;
+        }
+        //3.命中，反序列化后判断是否过期
+        RedisData redisData = cacheSerializer.deserialize(bytes, RedisData.class);
+        R value = cacheSerializer.convert(redisData.getData(), type);
+        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            //3.1.未过期，直接返回
+            if (options.isLocalCache()) {
+                localCache.put(key, value);
+            }
+            return value;
+        }
+        //4.已过期，获取互斥锁后开启独立线程重建缓存，其余线程返回旧数据
+        String lockKey = lockKey(key, id, options);
+        String token = tryLock(lockKey);
+        if (token != null) {
+            try {
+                CACHE_REBUILD_EXECUTOR.submit(() -> {
+                    try {
+                        //隔离舱已满时放弃本次重建，下次访问再尝试
+                        if (!bulkhead.tryAcquire()) {
+                            return;
+                        }
+                        R newValue;
+                        try {
+                            newValue = dbFallback.apply(id);
+                        } finally {
+                            bulkhead.release();
+                        }
+                        if (newValue == null) {
+                            setNull(key);
+                        } else {
+                            setWithLogicalExpire(key, newValue, options.getTtl(), options.getUnit());
+                        }
+                        localCache.publishEvict(key);
+                    } catch (Exception e) {
+                        log.error("重建缓存失败, key: {}", key, e);
+                    } finally {
+                        unlock(lockKey, token);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                unlock(lockKey, token);
+            }
+        }
+        return value;
+    }
+
+    private Semaphore bulkhead(String keyPrefix, CacheOptions options) {
+        String name = options.getBulkhead() == null ? keyPrefix : options.getBulkhead();
+        return bulkheads.computeIfAbsent(name, k -> new Semaphore(CACHE_LOAD_PERMITS));
+    }
+
+    /**
+     * 查询redis，redis不可用时按未命中处理
+     */
+    private byte[] get(String key) {
+        try {
+            return cacheRedisTemplate.opsForValue().get(key);
+        } catch (DataAccessException e) {
+            log.warn("查询缓存失败, key: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 缓存空值，有效期同样增加随机抖动
+     */
+    private void setNull(String key) {
+        cacheRedisTemplate.opsForValue().set(key, new byte[0],
+                jitter(TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL)), TimeUnit.SECONDS);
+    }
+
+    private String lockKey(String key, Object id, CacheOptions options) {
+        return options.getLockKeyPrefix() == null ? "lock:" + key : options.getLockKeyPrefix() + id;
+    }
+
+    /**
+     * 获取互斥锁，成功时返回锁的标识，失败返回null
+     */
+    private String tryLock(String lockKey) {
+        String token = UUID.randomUUID().toString(true);
+        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(success) ? token : null;
+    }
+
+    private void unlock(String lockKey, String token) {
+        stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+    }
+
+    private static long jitter(long seconds) {
+        //在原有效期的基础上随机增加0~20%，批量写入的key过期时间会分散开
+        return seconds + ThreadLocalRandom.current().nextLong(seconds / 5 + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存模式
+ */
+public enum CacheMode {
+    /**
+     * 普通的旁路缓存，数据库中不存在的数据不做处理
+     */
+    PASS_THROUGH,
+    /**
+     * redis中设置过期时间，过期后查询数据库重建，并缓存空值防止缓存穿透
+     */
+    TTL,
+    /**
+     * 在TTL的基础上，由获取到互斥锁的线程重建缓存，其余线程等待
+     */
+    MUTEX,
+    /**
+     * 逻辑过期，redis中不设置过期时间，过期后返回旧数据并异步重建
+     */
+    LOGICAL_EXPIRE
+}
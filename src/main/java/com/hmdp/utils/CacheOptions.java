@@ -0,0 +1,50 @@
+package com.hmdp.utils;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheClient查询时的缓存选项
+ */
+@Data
+@Accessors(chain = true)
+public class CacheOptions {
+
+    /**
+     * 缓存模式
+     */
+    private CacheMode mode = CacheMode.TTL;
+
+    /**
+     * 有效期，逻辑过期模式下为逻辑有效期
+     */
+    private Long ttl = 30L;
+
+    private TimeUnit unit = TimeUnit.MINUTES;
+
+    /**
+     * 是否使用本地一级缓存
+     */
+    private boolean localCache;
+
+    /**
+     * 是否探测热点key，热点key会额外放入短有效期的本地缓存
+     */
+    private boolean hotKeyDetection;
+
+    /**
+     * 互斥锁的key前缀，为空时使用 lock: + 缓存key
+     */
+    private String lockKeyPrefix;
+
+    /**
+     * 数据库加载的隔离舱名称，同名的查询共享并发额度，为空时使用缓存key前缀
+     */
+    private String bulkhead;
+
+    public static CacheOptions of(CacheMode mode, Long ttl, TimeUnit unit) {
+        return new CacheOptions().setMode(mode).setTtl(ttl).setUnit(unit);
+    }
+}
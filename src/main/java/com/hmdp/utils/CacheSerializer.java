@@ -0,0 +1,20 @@
+package com.hmdp.utils;
+
+import java.util.List;
+
+/**
+ * 缓存值的序列化方式，CacheClient通过它读写redis中的数据
+ */
+public interface CacheSerializer {
+
+    byte[] serialize(Object value);
+
+    <R> R deserialize(byte[] bytes, Class<R> type);
+
+    <R> List<R> deserializeList(byte[] bytes, Class<R> type);
+
+    /**
+     * 将逻辑过期数据中反序列化出的data字段转换为目标类型
+     */
+    <R> R convert(Object data, Class<R> type);
+}
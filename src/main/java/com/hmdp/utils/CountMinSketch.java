@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch，用固定大小的计数器估算每个key出现的次数
+ * 估算值只会偏大不会偏小，计数器越宽误差越小
+ */
+public class CountMinSketch {
+
+    private final AtomicLongArray[] rows;
+    private final int mask;
+
+    /**
+     * @param depth 哈希函数个数，即计数器的行数
+     * @param width 每行的计数器个数，会向上取整为2的幂
+     */
+    public CountMinSketch(int depth, int width) {
+        int size = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.rows = new AtomicLongArray[depth];
+        for (int i = 0; i < depth; i++) {
+            rows[i] = new AtomicLongArray(size);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 增加计数
+     *
+     * @return 增加之后的估算次数
+     */
+    public long add(String key, long delta) {
+        long h1 = mix(key.hashCode());
+        long h2 = mix(h1);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < rows.length; i++) {
+            int index = (int) ((h1 + i * h2) & mask);
+            min = Math.min(min, rows[i].addAndGet(index, delta));
+        }
+        return min;
+    }
+
+    public long estimate(String key) {
+        long h1 = mix(key.hashCode());
+        long h2 = mix(h1);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < rows.length; i++) {
+            int index = (int) ((h1 + i * h2) & mask);
+            min = Math.min(min, rows[i].get(index));
+        }
+        return min;
+    }
+
+    /**
+     * 所有计数减半，让统计结果偏向最近的访问
+     */
+    public void decay() {
+        for (AtomicLongArray row : rows) {
+            for (int i = 0; i < row.length(); i++) {
+                long old;
+                do {
+                    old = row.get(i);
+                } while (old != 0 && !row.compareAndSet(i, old, old >>> 1));
+            }
+        }
+    }
+
+    //murmur3的64位混淆函数
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 热点key探测
+ * 按比例采样读请求，用Count-Min Sketch估算每个key的访问次数，并维护访问次数最多的前K个key，
+ * 次数超过阈值的key标记为热点，由CacheClient放入短有效期的本地缓存；计数定期减半，热度会随时间衰减
+ */
+@Component
+public class HotKeyDetector {
+
+    private final CountMinSketch sketch = new CountMinSketch(4, 1 << 15);
+
+    //访问次数最多的前K个key及其估算次数
+    private final Map<String, Long> topKeys = new ConcurrentHashMap<>();
+    //进入前K个key的最低次数，低于它的key不需要加锁比较
+    private volatile long minTopCount;
+
+    private final Set<String> hotKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 记录一次读请求
+     */
+    public void record(String key) {
+        //采样，被采中的请求按采样比例计数
+        if (ThreadLocalRandom.current().nextInt(HOT_KEY_SAMPLE_RATE) != 0) {
+            return;
+        }
+        long count = sketch.add(key, HOT_KEY_SAMPLE_RATE);
+        if (count >= HOT_KEY_THRESHOLD) {
+            hotKeys.add(key);
+        }
+        offer(key, count);
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.contains(key);
+    }
+
+    private void offer(String key, long count) {
+        if (topKeys.containsKey(key)) {
+            topKeys.put(key, count);
+            return;
+        }
+        if (topKeys.size() >= HOT_KEY_TOP_K && count <= minTopCount) {
+            return;
+        }
+        synchronized (topKeys) {
+            topKeys.put(key, count);
+            trimTopKeys();
+        }
+    }
+
+    /**
+     * 用小顶堆找出次数最少的key，淘汰超出K个的部分，并更新进入前K的门槛
+     */
+    private void trimTopKeys() {
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(Map.Entry.comparingByValue());
+        heap.addAll(topKeys.entrySet());
+        while (heap.size() > HOT_KEY_TOP_K) {
+            topKeys.remove(heap.poll().getKey());
+        }
+        Map.Entry<String, Long> min = heap.peek();
+        minTopCount = heap.size() < HOT_KEY_TOP_K || min == null ? 0 : min.getValue();
+    }
+
+    /**
+     * 每个统计窗口结束时所有计数减半，不再热的key退出热点
+     */
+    @Scheduled(fixedRate = HOT_KEY_WINDOW)
+    public void decay() {
+        sketch.decay();
+        synchronized (topKeys) {
+            topKeys.replaceAll((key, count) -> count >>> 1);
+            topKeys.values().removeIf(count -> count == 0);
+            trimTopKeys();
+        }
+        hotKeys.removeIf(key -> topKeys.getOrDefault(key, 0L) < HOT_KEY_THRESHOLD);
+    }
+
+    /**
+     * 当前访问次数最多的key，按次数从高到低排列
+     */
+    public List<Map<String, Object>> topKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(topKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        List<Map<String, Object>> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getKey());
+            item.put("count", entry.getValue());
+            item.put("hot", hotKeys.contains(entry.getKey()));
+            result.add(item);
+        }
+        return result;
+    }
+}
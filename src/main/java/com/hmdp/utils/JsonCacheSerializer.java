@@ -0,0 +1,38 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 基于hutool的json序列化，与之前StringRedisTemplate写入的json字符串兼容
+ */
+@Component
+public class JsonCacheSerializer implements CacheSerializer {
+
+    @Override
+    public byte[] serialize(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R deserialize(byte[] bytes, Class<R> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public <R> List<R> deserializeList(byte[] bytes, Class<R> type) {
+        return JSONUtil.parseArray(new String(bytes, StandardCharsets.UTF_8)).toList(type);
+    }
+
+    @Override
+    public <R> R convert(Object data, Class<R> type) {
+        if (data instanceof JSONObject) {
+            return ((JSONObject) data).toBean(type);
+        }
+        return type.cast(data);
+    }
+}
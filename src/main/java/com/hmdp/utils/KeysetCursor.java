@@ -0,0 +1,71 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.CursorResult;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 键集分页的游标，内容是上一页最后一条记录的 排序列值:id，下一页用 WHERE (排序列, id) < (值, id) 定位，
+ * 不再使用OFFSET，翻到多深都只扫描一页的数据
+ */
+public class KeysetCursor {
+
+    private final long value;
+    private final long id;
+
+    private KeysetCursor(long value, long id) {
+        this.value = value;
+        this.id = id;
+    }
+
+    /**
+     * 解析游标
+     *
+     * @return 第一页(空游标)返回null
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static KeysetCursor parse(String cursor) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String[] parts = Base64.decodeStr(cursor).split(":");
+            return new KeysetCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的游标", e);
+        }
+    }
+
+    public static String encode(long value, long id) {
+        return Base64.encodeUrlSafe(value + ":" + id);
+    }
+
+    /**
+     * 封装一页数据，取满一页才有下一页
+     *
+     * @param records 多查询一条用于判断是否还有下一页，最多size+1条
+     * @param value   取记录的排序列值，只按id排序时传入id
+     * @param id      取记录的id
+     */
+    public static <T> CursorResult page(List<T> records, int size, Function<T, Long> value, Function<T, Long> id) {
+        CursorResult result = new CursorResult();
+        if (records.size() > size) {
+            records = records.subList(0, size);
+            T last = records.get(size - 1);
+            result.setCursor(encode(value.apply(last), id.apply(last)));
+        }
+        result.setList(records);
+        return result;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
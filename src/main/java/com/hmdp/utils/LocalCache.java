@@ -0,0 +1,119 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 进程内一级缓存，挡在redis缓存前面
+ * key与redis中的key保持一致，失效时通过redis的发布订阅通知所有节点
+ */
+@Component
+public class LocalCache {
+
+    private final Cache<String, Object> cache = Caffeine.newBuilder()
+            .maximumSize(CACHE_LOCAL_MAX_SIZE)
+            .expireAfterWrite(CACHE_LOCAL_TTL, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    //保留更久的旧数据，数据库加载被限流时兜底返回
+    private final Cache<String, Object> staleCache = Caffeine.newBuilder()
+            .maximumSize(CACHE_LOCAL_MAX_SIZE)
+            .expireAfterWrite(CACHE_LOCAL_STALE_TTL, TimeUnit.MINUTES)
+            .build();
+
+    //热点key的本地缓存，有效期很短，只用于挡住热点key对redis单个分片的集中访问
+    private final Cache<String, Object> hotCache = Caffeine.newBuilder()
+            .maximumSize(HOT_KEY_LOCAL_MAX_SIZE)
+            .expireAfterWrite(HOT_KEY_LOCAL_TTL, TimeUnit.SECONDS)
+            .build();
+
+    //二级缓存(redis)的命中统计
+    private final LongAdder redisHit = new LongAdder();
+    private final LongAdder redisMiss = new LongAdder();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    public <R> R get(String key, Class<R> type) {
+        Object value = cache.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    public void put(String key, Object value) {
+        cache.put(key, value);
+        staleCache.put(key, value);
+    }
+
+    public <R> R getHot(String key, Class<R> type) {
+        Object value = hotCache.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    public void putHot(String key, Object value) {
+        hotCache.put(key, value);
+    }
+
+    /**
+     * 查询已经过期但还没有被主动清除的旧数据
+     */
+    public Object getStale(String key) {
+        return staleCache.getIfPresent(key);
+    }
+
+    public void recordRedisHit() {
+        redisHit.increment();
+    }
+
+    public void recordRedisMiss() {
+        redisMiss.increment();
+    }
+
+    /**
+     * 只清除当前节点的本地缓存，由订阅到失效消息的监听器调用
+     */
+    public void evict(String key) {
+        cache.invalidate(key);
+        hotCache.invalidate(key);
+        staleCache.invalidate(key);
+    }
+
+    /**
+     * 清除本地缓存，并广播给其它节点一起清除
+     */
+    public void publishEvict(String key) {
+        evict(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 各级缓存的命中情况，用于评估本地缓存的容量
+     */
+    public Map<String, Object> stats() {
+        CacheStats l1 = cache.stats();
+        long l2Hit = redisHit.sum();
+        long l2Miss = redisMiss.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("l1Size", cache.estimatedSize());
+        stats.put("l1Hit", l1.hitCount());
+        stats.put("l1Miss", l1.missCount());
+        stats.put("l1HitRate", l1.hitRate());
+        stats.put("l1Eviction", l1.evictionCount());
+        stats.put("hotSize", hotCache.estimatedSize());
+        stats.put("l2Hit", l2Hit);
+        stats.put("l2Miss", l2Miss);
+        stats.put("l2HitRate", l2Hit + l2Miss == 0 ? 1.0 : (double) l2Hit / (l2Hit + l2Miss));
+        return stats;
+    }
+}
@@ -10,13 +10,58 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_SHOP_LOGICAL_KEY = "cache:shop:logical:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String SHOP_BLOOM_ADD_CHANNEL = "shop:bloom:add";
+    public static final String SHOP_CHANGED_CHANNEL = "shop:changed";
+    public static final String RESPONSE_CACHE_EVICT_CHANNEL = "response:cache:evict";
+    public static final Long RESPONSE_CACHE_MAX_SIZE = 10000L;
+    public static final Long CACHE_LOCAL_TTL = 60L;
+    public static final Long CACHE_LOCAL_MAX_SIZE = 10000L;
+    public static final Long CACHE_LOCAL_STALE_TTL = 10L;
+    public static final Integer CACHE_LOAD_PERMITS = 20;
+    public static final Long CACHE_LOAD_WAIT = 100L;
+
+    public static final int HOT_KEY_SAMPLE_RATE = 4;
+    public static final int HOT_KEY_TOP_K = 100;
+    public static final long HOT_KEY_THRESHOLD = 1000L;
+    public static final long HOT_KEY_WINDOW = 10000L;
+    public static final Long HOT_KEY_LOCAL_TTL = 5L;
+    public static final Long HOT_KEY_LOCAL_MAX_SIZE = 1000L;
+
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_VOUCHER_LIST_KEY = "cache:voucher:list:";
+    public static final Long CACHE_VOUCHER_LIST_TTL = 1L;
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_META_KEY = "seckill:meta:";
+    public static final String SECKILL_RATE_KEY = "seckill:rate:";
+    public static final String SECKILL_QUEUE_KEY = "seckill:queue:";
+    public static final int SECKILL_MAX_SHARDS = 16;
+    public static final Long SECKILL_LOCAL_TTL = 10L;
+    public static final long SECKILL_CLOCK_SKEW = 2000L;
+    public static final Long SECKILL_LOCAL_MAX_SIZE = 10000L;
+    public static final Long SECKILL_USER_WINDOW_MAX_SIZE = 100000L;
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+    public static final Long SECKILL_SOLD_OUT_TTL = 60L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_REBUILD_SUFFIX = ":rebuild";
+    public static final String SHOP_GEO_REBUILD_LOCK_KEY = "lock:shop:geo:rebuild";
+    public static final String SHOP_GEO_REBUILD_DIRTY_KEY = "shop:geo-rebuild:dirty";
+    public static final Long SHOP_GEO_REBUILD_TTL = 600L;
     public static final String USER_SIGN_KEY = "sign:";
 }
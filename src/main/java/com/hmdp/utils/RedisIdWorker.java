@@ -18,6 +18,8 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
     private StringRedisTemplate stringRedisTemplate;
 
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
@@ -25,18 +27,29 @@ public class RedisIdWorker {
     }
 
     public long nextId(String keyPrefix) {
-        // 1.生成时间戳
+        // 1.获取当前时间
         LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        long timestamp = nowSecond - BEGIN_TIMESTAMP;
+        // 2.自增长
+        long count = stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, now));
+        // 3.拼接并返回
+        return toId(now, count);
+    }
 
-        // 2.生成序列号
-        // 2.1.获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2.自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+    /**
+     * 序列号的key，精确到天，供lua脚本在同一次往返中自增
+     */
+    public String counterKey(String keyPrefix, LocalDateTime now) {
+        return "icr:" + keyPrefix + ":" + now.format(DATE_FORMATTER);
+    }
 
-        // 3.拼接并返回
-        return timestamp << COUNT_BITS | count;
+    /**
+     * 用时间戳和序列号拼接id
+     */
+    public long toId(LocalDateTime now, long count) {
+        return toId(now.toEpochSecond(ZoneOffset.UTC), count);
+    }
+
+    public long toId(long epochSecond, long count) {
+        return (epochSecond - BEGIN_TIMESTAMP) << COUNT_BITS | count;
     }
 }
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.io.IoUtil;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用SCAN分批查找key，不会像KEYS一样长时间阻塞redis，只用于后台任务和启动检查
+ */
+public class RedisScanUtils {
+
+    /**
+     * 查找匹配pattern的所有key
+     * @param pattern key的通配符
+     * @return 匹配的key
+     */
+    public static List<String> scanKeys(StringRedisTemplate stringRedisTemplate, String pattern) {
+        List<String> keys = new ArrayList<>();
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+            Cursor<byte[]> cursor = connection.scan(options);
+            try {
+                cursor.forEachRemaining(key -> keys.add(new String(key, StandardCharsets.UTF_8)));
+            } finally {
+                IoUtil.close(cursor);
+            }
+            return null;
+        });
+        return keys;
+    }
+}
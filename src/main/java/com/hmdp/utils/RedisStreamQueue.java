@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于redis stream消费者组的消息队列
+ * 消息读取后进入pending-list，处理完成后ack并删除；消费者宕机留下的消息由其它消费者认领后重新处理
+ */
+public class RedisStreamQueue {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String streamKey;
+    private final String group;
+
+    public RedisStreamQueue(StringRedisTemplate stringRedisTemplate, String streamKey, String group) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.streamKey = streamKey;
+        this.group = group;
+    }
+
+    /**
+     * 创建消费者组，stream不存在时一并创建，组已经存在时忽略
+     */
+    public void createGroup() {
+        byte[] key = streamKey.getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(key, group, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 读取尚未投递给任何消费者的消息，没有消息时最多阻塞block
+     * 阻塞读取会占用一个独立的redis连接，消费者数量不能超过连接池的大小
+     */
+    @SuppressWarnings("unchecked")
+    public List<MapRecord<String, Object, Object>> read(String consumer, int count, Duration block) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(group, consumer),
+                StreamReadOptions.empty().count(count).block(block),
+                StreamOffset.create(streamKey, ReadOffset.lastConsumed()));
+        return records == null ? Collections.emptyList() : records;
+    }
+
+    /**
+     * 读取尚未投递给任何消费者的消息，不阻塞
+     */
+    @SuppressWarnings("unchecked")
+    public List<MapRecord<String, Object, Object>> read(String consumer, int count) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(group, consumer),
+                StreamReadOptions.empty().count(count),
+                StreamOffset.create(streamKey, ReadOffset.lastConsumed()));
+        return records == null ? Collections.emptyList() : records;
+    }
+
+    /**
+     * 确认并删除处理完成的消息，stream中只保留待处理的消息
+     */
+    public void ack(List<RecordId> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        RecordId[] array = ids.toArray(new RecordId[0]);
+        stringRedisTemplate.opsForStream().acknowledge(streamKey, group, array);
+        stringRedisTemplate.opsForStream().delete(streamKey, array);
+    }
+
+    /**
+     * 把消息重新写入stream末尾后确认原来的消息，新消息的投递次数从零开始
+     * 写入之后确认之前失败时消息会重复，消费者需要能处理重复的消息
+     */
+    public void requeue(List<MapRecord<String, Object, Object>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<RecordId> ids = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            stringRedisTemplate.opsForStream().add(streamKey, record.getValue());
+            ids.add(record.getId());
+        }
+        ack(ids);
+    }
+
+    /**
+     * 查询投递后超过minIdle仍未确认的消息
+     */
+    public List<PendingMessage> idle(Duration minIdle, int count) {
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(streamKey, group, Range.unbounded(), count);
+        List<PendingMessage> idle = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                idle.add(message);
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * 认领超时的消息，认领后投递次数加一；已经被别的消费者认领或确认的消息不会返回
+     */
+    public List<MapRecord<String, Object, Object>> claim(String consumer, Duration minIdle, List<RecordId> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .claim(streamKey, group, consumer, minIdle, ids.toArray(new RecordId[0]));
+        return records == null ? Collections.emptyList() : records;
+    }
+
+    /**
+     * stream中的消息数量，包括未投递和未确认的
+     */
+    public long size() {
+        Long size = stringRedisTemplate.opsForStream().size(streamKey);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * 已投递但未确认的消息数量
+     */
+    public long pendingCount() {
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(streamKey, group);
+        return summary == null ? 0 : summary.getTotalPendingMessages();
+    }
+}
@@ -2,6 +2,7 @@ package com.hmdp.utils;
 
 import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.UserDTO;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
@@ -10,6 +11,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+
 /**
  * token刷新拦截器
  */
@@ -17,8 +20,16 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
 
     StringRedisTemplate stringRedisTemplate;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    CacheSerializer cacheSerializer;
+
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate,
+                                   RedisTemplate<String, byte[]> cacheRedisTemplate,
+                                   CacheSerializer cacheSerializer) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheRedisTemplate = cacheRedisTemplate;
+        this.cacheSerializer = cacheSerializer;
     }
 
     @Override
@@ -29,15 +40,23 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
         //2.从redis中找出tokenKey
-        String tokenKey = "login:user" + token;
-        Map<Object, Object> map = stringRedisTemplate.opsForHash().entries(tokenKey);
-        if (map.isEmpty()){
-            return true;
+        String tokenKey = LOGIN_USER_KEY + token;
+        byte[] bytes = cacheRedisTemplate.opsForValue().get(tokenKey);
+        UserDTO userDTO;
+        if (bytes != null && bytes.length > 0) {
+            userDTO = cacheSerializer.deserialize(bytes, UserDTO.class);
+        } else {
+            //兼容升级前以hash方式保存的登录信息
+            tokenKey = "login:user" + token;
+            Map<Object, Object> map = stringRedisTemplate.opsForHash().entries(tokenKey);
+            if (map.isEmpty()){
+                return true;
+            }
+            userDTO = BeanUtil.fillBeanWithMap(map, new UserDTO(), false);
         }
         //3.刷新token的时长
         stringRedisTemplate.expire(tokenKey,30, TimeUnit.MINUTES);
         //将user对象存入ThreadLocal
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(map, new UserDTO(), false);
         UserHolder.saveUser(userDTO);
         return true;
     }
@@ -0,0 +1,32 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 缓存接口的响应，只用于与登录用户无关的GET接口
+ * 成功的响应序列化后保存在本地内存中，命中时直接返回，并支持通过ETag协商返回304
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ResponseCache {
+
+    /**
+     * 缓存名称，写操作按名称清除
+     */
+    String value();
+
+    /**
+     * 作为清除粒度的路径变量名，为空时按名称整体清除
+     */
+    String key() default "";
+
+    /**
+     * 有效期，单位秒
+     */
+    long ttl() default 300;
+}
@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * 响应缓存拦截器，命中时直接返回缓存的响应，未命中时记下缓存key，由ResponseCacheAdvice在写出响应时保存
+ */
+public class ResponseCacheInterceptor implements HandlerInterceptor {
+
+    public static final String CACHE_KEY_ATTRIBUTE = ResponseCacheInterceptor.class.getName() + ".key";
+    public static final String CACHE_GROUP_ATTRIBUTE = ResponseCacheInterceptor.class.getName() + ".group";
+    public static final String CACHE_VERSION_ATTRIBUTE = ResponseCacheInterceptor.class.getName() + ".version";
+
+    private final ResponseCacheManager responseCacheManager;
+
+    public ResponseCacheInterceptor(ResponseCacheManager responseCacheManager) {
+        this.responseCacheManager = responseCacheManager;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //1.只处理带有@ResponseCache注解的GET请求
+        if (!(handler instanceof HandlerMethod) || !"GET".equals(request.getMethod())) {
+            return true;
+        }
+        ResponseCache annotation = ((HandlerMethod) handler).getMethodAnnotation(ResponseCache.class);
+        if (annotation == null) {
+            return true;
+        }
+        //2.计算缓存key，清除粒度取自路径变量
+        String group = annotation.value();
+        if (StrUtil.isNotEmpty(annotation.key())) {
+            Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            group = group + ":" + (variables == null ? "" : variables.get(annotation.key()));
+        }
+        String query = request.getQueryString();
+        String key = group + ":" + request.getRequestURI() + (query == null ? "" : "?" + query);
+        //3.命中缓存，客户端的ETag一致时返回304，否则直接写出缓存的响应
+        ResponseCacheManager.Entry entry = responseCacheManager.get(key);
+        if (entry != null) {
+            response.setHeader(HttpHeaders.ETAG, entry.getEtag());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+            if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), entry.getEtag())) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return false;
+            }
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(entry.getBody().length);
+            response.getOutputStream().write(entry.getBody());
+            return false;
+        }
+        //4.未命中，记下key和当前版本号
+        request.setAttribute(CACHE_KEY_ATTRIBUTE, key);
+        request.setAttribute(CACHE_GROUP_ATTRIBUTE, group);
+        request.setAttribute(CACHE_VERSION_ATTRIBUTE, responseCacheManager.version(group));
+        return true;
+    }
+
+    /**
+     * If-None-Match中可能包含多个ETag，也可能带有弱校验前缀W/
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = StrUtil.removePrefix(candidate.trim(), "W/");
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
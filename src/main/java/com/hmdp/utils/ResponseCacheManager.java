@@ -0,0 +1,108 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.RESPONSE_CACHE_EVICT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.RESPONSE_CACHE_MAX_SIZE;
+
+/**
+ * 接口响应缓存，key为 缓存名称:清除粒度:请求路径
+ * 每个 缓存名称:清除粒度 维护一个版本号，清除时版本号加一，清除之前开始的请求不会把旧数据写回缓存
+ */
+@Component
+public class ResponseCacheManager {
+
+    private final Cache<String, Entry> cache = Caffeine.newBuilder()
+            .maximumSize(RESPONSE_CACHE_MAX_SIZE)
+            .build();
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    public Entry get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.getExpireAt() < System.currentTimeMillis()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 写入缓存，期间发生过清除时放弃写入
+     */
+    public void put(String key, String group, long version, byte[] body, String etag, long ttlSeconds) {
+        if (version(group) != version) {
+            return;
+        }
+        cache.put(key, new Entry(body, etag, System.currentTimeMillis() + ttlSeconds * 1000));
+    }
+
+    public long version(String group) {
+        return versions.computeIfAbsent(group, k -> new AtomicLong()).get();
+    }
+
+    /**
+     * 只清除当前节点，由订阅到清除消息的监听器调用
+     *
+     * @param group 缓存名称，或者 缓存名称:路径变量值
+     */
+    public void evict(String group) {
+        String prefix = group + ":";
+        //按名称整体清除时，名称下各个路径变量的版本号也要加一
+        versions.forEach((k, v) -> {
+            if (k.startsWith(prefix)) {
+                v.incrementAndGet();
+            }
+        });
+        versions.computeIfAbsent(group, k -> new AtomicLong()).incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * 清除所有节点的缓存，在事务中调用时等到提交之后再清除
+     *
+     * @param name 缓存名称
+     * @param key  路径变量的值，为null时清除整个缓存
+     */
+    public void publishEvict(String name, Object key) {
+        String group = key == null ? name : name + ":" + key;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doPublishEvict(group);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                doPublishEvict(group);
+            }
+        });
+    }
+
+    private void doPublishEvict(String group) {
+        evict(group);
+        stringRedisTemplate.convertAndSend(RESPONSE_CACHE_EVICT_CHANNEL, group);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final byte[] body;
+        private final String etag;
+        private final long expireAt;
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀入口的本地限流，在执行秒杀脚本之前拦截，被拒绝的请求不访问redis
+ * 1.每个用户一个滑动窗口，限制单个用户(机器人、重试风暴)的请求频率
+ * 2.每张秒杀券一个令牌桶，速率等于全局的限流阈值：单个节点放行的请求超过全局阈值时一定会被redis中的令牌桶拒绝，
+ * 所以可以提前在本地拒绝；全局的令牌桶在秒杀脚本中执行，和资格校验在同一次往返中完成
+ */
+@Component
+public class SeckillRateLimiter {
+
+    private static final long WINDOW_MILLIS = 1000L;
+
+    private final Cache<Long, TokenBucket> buckets = Caffeine.newBuilder()
+            .maximumSize(SECKILL_LOCAL_MAX_SIZE)
+            .expireAfterAccess(SECKILL_LOCAL_TTL, TimeUnit.MINUTES)
+            .build();
+
+    private final Cache<String, SlidingWindow> windows = Caffeine.newBuilder()
+            .maximumSize(SECKILL_USER_WINDOW_MAX_SIZE)
+            .expireAfterAccess(WINDOW_MILLIS * 10, TimeUnit.MILLISECONDS)
+            .build();
+
+    /**
+     * 单个用户的请求是否超过了频率限制
+     */
+    public boolean userLimited(Long voucherId, Long userId, SeckillVoucherMeta.Meta meta) {
+        if (meta.getUserRate() <= 0) {
+            return false;
+        }
+        SlidingWindow window = windows.get(voucherId + ":" + userId, k -> new SlidingWindow(meta.getUserRate()));
+        return !window.tryAcquire(System.currentTimeMillis());
+    }
+
+    /**
+     * 秒杀券的请求是否超过了本地令牌桶
+     */
+    public boolean voucherLimited(Long voucherId, SeckillVoucherMeta.Meta meta) {
+        if (meta.getRate() <= 0) {
+            return false;
+        }
+        TokenBucket bucket = buckets.get(voucherId, k -> new TokenBucket(meta.getRate()));
+        return !bucket.tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * 滑动窗口，记录最近limit次放行的时间，最早的一次还在窗口内时拒绝
+     */
+    static class SlidingWindow {
+        private final long[] times;
+        private int next;
+
+        SlidingWindow(int limit) {
+            times = new long[limit];
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (times[next] != 0 && now - times[next] < WINDOW_MILLIS) {
+                return false;
+            }
+            times[next] = now;
+            next = (next + 1) % times.length;
+            return true;
+        }
+    }
+
+    /**
+     * 令牌桶，容量等于每秒的速率
+     */
+    static class TokenBucket {
+        private final double rate;
+        private double tokens;
+        private long last;
+
+        TokenBucket(int rate) {
+            this.rate = rate;
+            this.tokens = rate;
+            this.last = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            tokens = Math.min(rate, tokens + (now - last) * rate / 1_000_000_000L);
+            last = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
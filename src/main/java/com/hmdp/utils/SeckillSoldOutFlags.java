@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀券售罄的本地标记，售罄后的请求直接返回，不再执行lua脚本
+ * 标记通过redis的发布订阅同步到所有节点，补充库存时清除；标记本身也会过期，
+ * 补充库存的消息和售罄的消息乱序时，最多在过期之前误判售罄
+ */
+@Component
+public class SeckillSoldOutFlags {
+
+    private final Cache<Long, Boolean> soldOut = Caffeine.newBuilder()
+            .expireAfterWrite(SECKILL_SOLD_OUT_TTL, TimeUnit.SECONDS)
+            .build();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.getIfPresent(voucherId) != null;
+    }
+
+    /**
+     * 只修改当前节点，由订阅到消息的监听器调用
+     */
+    public void markSoldOut(Long voucherId) {
+        soldOut.put(voucherId, Boolean.TRUE);
+    }
+
+    public void clear(Long voucherId) {
+        soldOut.invalidate(voucherId);
+    }
+
+    /**
+     * 标记售罄，并广播给其它节点；已经标记过的不重复广播
+     */
+    public void publishSoldOut(Long voucherId) {
+        if (soldOut.asMap().putIfAbsent(voucherId, Boolean.TRUE) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 库存得到补充，清除所有节点的售罄标记
+     */
+    public void publishRestock(Long voucherId) {
+        clear(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+}
@@ -0,0 +1,232 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存分片
+ * 开启后新建的秒杀券把库存平均拆到多个分片，key形如 seckill:{s1}:stock:优惠券id，
+ * 同一个分片的库存、已下单用户、订单序列号、订单stream、元数据和令牌桶带有相同的hash tag，集群中落在同一个slot，
+ * 用户按id固定落在一个分片，一人一单只需要在分片内判断；分片库存用完时从兄弟分片借
+ */
+@Component
+public class SeckillStockShards {
+
+    //序列号的步长，分片序列号 = 自增值 * 步长 + 分片号 + 1，不分片的序列号偏移为0
+    public static final int SEQ_STRIDE = SECKILL_MAX_SHARDS + 1;
+
+    private static final DefaultRedisScript<Long> BORROW_SCRIPT;
+
+    static {
+        BORROW_SCRIPT = new DefaultRedisScript<>();
+        BORROW_SCRIPT.setLocation(new ClassPathResource("seckill_borrow.lua"));
+        BORROW_SCRIPT.setResultType(Long.class);
+    }
+
+    //阻塞读取订单stream之外，连接池至少还要留给管道、事务等其它操作的连接数
+    private static final int RESERVED_CONNECTIONS = 2;
+
+    @Value("${hmdp.seckill.shards:0}")
+    private int shards;
+
+    @Value("${hmdp.seckill.order.workers:4}")
+    private int workers;
+
+    @Value("${spring.redis.lettuce.pool.max-active:8}")
+    private int maxActive;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    //秒杀券的分片数，创建后不会变化，0表示不分片
+    private final LoadingCache<Long, Integer> shardsOfVoucher = Caffeine.newBuilder()
+            .maximumSize(SECKILL_LOCAL_MAX_SIZE)
+            .expireAfterAccess(SECKILL_LOCAL_TTL, TimeUnit.MINUTES)
+            .build(this::loadShards);
+
+    @PostConstruct
+    public void init() {
+        if (shards < 0 || shards > SECKILL_MAX_SHARDS) {
+            throw new IllegalStateException("秒杀库存分片数必须在0到" + SECKILL_MAX_SHARDS + "之间");
+        }
+        //每个工作线程和每个分片的消费线程阻塞读取时各占用一个连接，占满连接池后其它redis操作都会等待
+        if (workers + shards > maxActive - RESERVED_CONNECTIONS) {
+            throw new IllegalStateException("订单工作线程数(" + workers + ")与秒杀库存分片数(" + shards
+                    + ")之和不能超过redis连接池大小(" + maxActive + ")减" + RESERVED_CONNECTIONS
+                    + "，请调小hmdp.seckill.order.workers、hmdp.seckill.shards或调大spring.redis.lettuce.pool.max-active");
+        }
+    }
+
+    /**
+     * 当前配置的分片数，订单消费者据此订阅各个分片的stream
+     */
+    public int configuredShards() {
+        return shards;
+    }
+
+    public int shardsOf(Long voucherId) {
+        return shardsOfVoucher.get(voucherId);
+    }
+
+    private Integer loadShards(Long voucherId) {
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + voucherId);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    /**
+     * 用户所在的分片，不分片时返回-1
+     */
+    public int homeShard(Long voucherId, Long userId) {
+        int count = shardsOf(voucherId);
+        return count == 0 ? -1 : (int) (userId % count);
+    }
+
+    public static String stockKey(Long voucherId, int shard) {
+        return shard < 0 ? SECKILL_STOCK_KEY + voucherId : "seckill:" + tag(shard) + ":stock:" + voucherId;
+    }
+
+    public static String orderKey(Long voucherId, int shard) {
+        return shard < 0 ? SECKILL_ORDER_KEY + voucherId : "seckill:" + tag(shard) + ":order:" + voucherId;
+    }
+
+    public static String metaKey(Long voucherId, int shard) {
+        return shard < 0 ? SECKILL_META_KEY + voucherId : "seckill:" + tag(shard) + ":meta:" + voucherId;
+    }
+
+    public static String rateKey(Long voucherId, int shard) {
+        return shard < 0 ? SECKILL_RATE_KEY + voucherId : "seckill:" + tag(shard) + ":rate:" + voucherId;
+    }
+
+    public static String streamKey(int shard) {
+        return SECKILL_ORDER_STREAM + ":" + tag(shard);
+    }
+
+    /**
+     * 分片订单序列号的key前缀，传给RedisIdWorker拼接日期
+     */
+    public static String idPrefix(int shard) {
+        return "order:" + tag(shard);
+    }
+
+    private static String tag(int shard) {
+        return "{s" + shard + "}";
+    }
+
+    /**
+     * 初始化新秒杀券的元数据和redis库存，开启分片且库存不少于分片数时拆分到各个分片
+     * 元数据总是写入不分片的key，供各节点加载到本地；分片模式下每个分片再写一份，供分片的脚本在同一个slot内读取
+     */
+    public void init(Long voucherId, int stock, Map<String, String> meta) {
+        if (!meta.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(metaKey(voucherId, -1), meta);
+        }
+        if (shards == 0 || stock < shards) {
+            stringRedisTemplate.opsForValue().set(stockKey(voucherId, -1), String.valueOf(stock));
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            if (!meta.isEmpty()) {
+                stringRedisTemplate.opsForHash().putAll(metaKey(voucherId, i), meta);
+            }
+            stringRedisTemplate.opsForValue().set(stockKey(voucherId, i), String.valueOf(share(stock, i, shards)));
+        }
+        //分片库存写完后再写分片数，秒杀请求看到分片数时分片已经就绪
+        stringRedisTemplate.opsForValue().set(SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        shardsOfVoucher.put(voucherId, shards);
+    }
+
+    /**
+     * 增加redis库存，分片的秒杀券平均加到各个分片
+     */
+    public void addStock(Long voucherId, int amount) {
+        int count = shardsOf(voucherId);
+        if (count == 0) {
+            stringRedisTemplate.opsForValue().increment(stockKey(voucherId, -1), amount);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int share = share(amount, i, count);
+            if (share > 0) {
+                stringRedisTemplate.opsForValue().increment(stockKey(voucherId, i), share);
+            }
+        }
+    }
+
+    /**
+     * redis中的剩余库存，分片的秒杀券为各个分片之和
+     *
+     * @return 剩余库存，没有库存key时返回null
+     */
+    public Integer stock(Long voucherId) {
+        int count = shardsOf(voucherId);
+        List<String> keys = new ArrayList<>(Math.max(count, 1));
+        if (count == 0) {
+            keys.add(stockKey(voucherId, -1));
+        }
+        for (int i = 0; i < count; i++) {
+            keys.add(stockKey(voucherId, i));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return null;
+        }
+        Integer total = null;
+        for (String value : values) {
+            if (value != null) {
+                total = (total == null ? 0 : total) + Integer.parseInt(value);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 分片库存用完时依次向兄弟分片借一半库存
+     * 借出和借入不在同一个slot，无法原子完成，借出后节点宕机只会少卖不会超卖
+     *
+     * @return 是否借到库存，所有分片都没有库存时返回false
+     */
+    public boolean borrow(Long voucherId, int home) {
+        int count = shardsOf(voucherId);
+        for (int i = 1; i < count; i++) {
+            int sibling = (home + i) % count;
+            Long amount = stringRedisTemplate.execute(BORROW_SCRIPT,
+                    Collections.singletonList(stockKey(voucherId, sibling)));
+            if (amount != null && amount > 0) {
+                stringRedisTemplate.opsForValue().increment(stockKey(voucherId, home), amount);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 秒杀脚本的key，依次是 库存、已下单用户、订单序列号、订单stream、元数据、令牌桶
+     */
+    public List<String> scriptKeys(Long voucherId, int shard, RedisIdWorker redisIdWorker, LocalDateTime now) {
+        return Arrays.asList(stockKey(voucherId, shard), orderKey(voucherId, shard),
+                redisIdWorker.counterKey(idPrefix(shard), now), streamKey(shard), metaKey(voucherId, shard),
+                rateKey(voucherId, shard));
+    }
+
+    //余数分给前面的分片
+    private static int share(int total, int index, int count) {
+        return total / count + (index < total % count ? 1 : 0);
+    }
+}
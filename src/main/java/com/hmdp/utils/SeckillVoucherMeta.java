@@ -0,0 +1,128 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀券的元数据：开始时间、结束时间、限流阈值、等候室的入场速率
+ * 新增秒杀券时写入redis的hash，由秒杀脚本原子地校验；各节点在本地缓存一份，
+ * 明显还没开始或者已经结束的请求不访问redis直接返回
+ */
+@Component
+public class SeckillVoucherMeta {
+
+    public static final String FIELD_BEGIN = "begin";
+    public static final String FIELD_END = "end";
+    public static final String FIELD_RATE = "rate";
+    public static final String FIELD_USER_RATE = "userRate";
+    public static final String FIELD_ADMIT_RATE = "admitRate";
+
+    private static final Meta EMPTY = new Meta(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 0);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final LoadingCache<Long, Meta> metas = Caffeine.newBuilder()
+            .maximumSize(SECKILL_LOCAL_MAX_SIZE)
+            .expireAfterWrite(SECKILL_LOCAL_TTL, TimeUnit.MINUTES)
+            .build(this::load);
+
+    public Meta get(Long voucherId) {
+        return metas.get(voucherId);
+    }
+
+    private Meta load(Long voucherId) {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(SECKILL_META_KEY + voucherId);
+        //升级前创建的秒杀券没有元数据，不做校验
+        if (fields.isEmpty()) {
+            return EMPTY;
+        }
+        return toMeta(fields);
+    }
+
+    private static Meta toMeta(Map<?, ?> fields) {
+        return new Meta(parse(fields.get(FIELD_BEGIN), Long.MIN_VALUE), parse(fields.get(FIELD_END), Long.MAX_VALUE),
+                (int) parse(fields.get(FIELD_RATE), 0), (int) parse(fields.get(FIELD_USER_RATE), 0),
+                (int) parse(fields.get(FIELD_ADMIT_RATE), 0));
+    }
+
+    private static long parse(Object value, long defaultValue) {
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 生成要写入redis的元数据，时间是毫秒时间戳，限流阈值和入场速率为空或0时不写入
+     */
+    public static Map<String, String> toHash(LocalDateTime beginTime, LocalDateTime endTime,
+                                             Integer rateLimit, Integer userRateLimit, Integer admitRate) {
+        Map<String, String> hash = new HashMap<>(8);
+        if (beginTime != null) {
+            hash.put(FIELD_BEGIN, String.valueOf(toMillis(beginTime)));
+        }
+        if (endTime != null) {
+            hash.put(FIELD_END, String.valueOf(toMillis(endTime)));
+        }
+        if (rateLimit != null && rateLimit > 0) {
+            hash.put(FIELD_RATE, rateLimit.toString());
+        }
+        if (userRateLimit != null && userRateLimit > 0) {
+            hash.put(FIELD_USER_RATE, userRateLimit.toString());
+        }
+        if (admitRate != null && admitRate > 0) {
+            hash.put(FIELD_ADMIT_RATE, admitRate.toString());
+        }
+        return hash;
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public void put(Long voucherId, Map<String, String> hash) {
+        metas.put(voucherId, toMeta(hash));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Meta {
+        private final long begin;
+        private final long end;
+        //每秒放行的请求数，0表示不限制
+        private final int rate;
+        //每个用户每秒的请求数，0表示不限制
+        private final int userRate;
+        //等候室每秒放行的人数，0表示不开启等候室
+        private final int admitRate;
+
+        public boolean waitingRoom() {
+            return admitRate > 0;
+        }
+
+        /**
+         * 本地时钟和redis可能有偏差，只判断明显还没开始的请求，临界的请求交给lua脚本按redis的时间判断
+         */
+        public boolean notStarted(long now) {
+            return now + SECKILL_CLOCK_SKEW < begin;
+        }
+
+        /**
+         * 同上，只判断明显已经结束的请求
+         */
+        public boolean ended(long now) {
+            return now - SECKILL_CLOCK_SKEW > end;
+        }
+    }
+}
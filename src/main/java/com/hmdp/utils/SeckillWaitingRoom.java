@@ -0,0 +1,217 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.WaitingRoomStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_META_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_QUEUE_KEY;
+
+/**
+ * 秒杀的虚拟等候室
+ * 用户排队时在redis中领取一个排队号和入场时间，入场时间按排队顺序以入场速率均匀排开，得到签名的排队凭证；
+ * 之后的轮询只在本地校验凭证，到了入场时间发放短期有效的入场令牌，下单时同样在本地校验令牌，
+ * 等候室里只有排队访问redis
+ * 凭证和令牌用配置的密钥签名，所有节点必须相同；没有配置密钥时不能开启等候室
+ */
+@Slf4j
+@Component
+public class SeckillWaitingRoom {
+
+    static final String TYPE_TICKET = "T";
+    static final String TYPE_ADMISSION = "A";
+    private static final String ALGORITHM = "HmacSHA256";
+    //轮询间隔的上下限，毫秒
+    private static final long MIN_RETRY = 500L;
+    private static final long MAX_RETRY = 5000L;
+
+    private static final DefaultRedisScript<String> QUEUE_SCRIPT;
+
+    static {
+        QUEUE_SCRIPT = new DefaultRedisScript<>();
+        QUEUE_SCRIPT.setLocation(new ClassPathResource("seckill_queue.lua"));
+        QUEUE_SCRIPT.setResultType(String.class);
+    }
+
+    @Value("${hmdp.seckill.waiting-room.secret:}")
+    private String secret;
+
+    @Value("${hmdp.seckill.waiting-room.admission-ttl:30}")
+    private long admissionTtl;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private SecretKeySpec key;
+
+    public SeckillWaitingRoom() {
+    }
+
+    /**
+     * 直接使用给定的密钥，不访问redis，只能签名和校验，不能排队
+     */
+    SeckillWaitingRoom(String secret, long admissionTtl) {
+        this.secret = secret;
+        this.admissionTtl = admissionTtl;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    @PostConstruct
+    public void init() {
+        //所有节点必须使用相同的密钥，随机密钥签发的凭证在其它节点和重启之后都无法通过校验
+        if (StrUtil.isNotBlank(secret)) {
+            key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            return;
+        }
+        Long voucherId = activeWaitingRoom();
+        if (voucherId != null) {
+            throw new IllegalStateException("秒杀券" + voucherId + "开启了等候室，必须配置hmdp.seckill.waiting-room.secret");
+        }
+        log.info("没有配置等候室的签名密钥，不能开启等候室");
+    }
+
+    /**
+     * 是否配置了签名密钥，没有配置时不能创建开启等候室的秒杀券
+     */
+    public boolean enabled() {
+        return key != null;
+    }
+
+    /**
+     * 查找一张开启了等候室且还没结束的秒杀券
+     */
+    private Long activeWaitingRoom() {
+        long now = System.currentTimeMillis();
+        for (String metaKey : RedisScanUtils.scanKeys(stringRedisTemplate, SECKILL_META_KEY + "*")) {
+            List<Object> fields = stringRedisTemplate.opsForHash()
+                    .multiGet(metaKey, Arrays.asList(SeckillVoucherMeta.FIELD_ADMIT_RATE, SeckillVoucherMeta.FIELD_END));
+            if (fields.get(0) != null && (fields.get(1) == null || Long.parseLong(fields.get(1).toString()) > now)
+                    && NumberUtil.isLong(metaKey.substring(SECKILL_META_KEY.length()))) {
+                return Long.valueOf(metaKey.substring(SECKILL_META_KEY.length()));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 排队，同一个用户重复排队时得到原来的排队号和入场时间
+     */
+    public WaitingRoomStatus join(Long voucherId, Long userId, SeckillVoucherMeta.Meta meta) {
+        long begin = meta.getBegin() == Long.MIN_VALUE ? 0 : meta.getBegin();
+        String value = stringRedisTemplate.execute(QUEUE_SCRIPT,
+                Arrays.asList(SECKILL_QUEUE_KEY + voucherId, SECKILL_QUEUE_KEY + voucherId + ":users"),
+                userId.toString(), String.valueOf(begin), String.valueOf(meta.getAdmitRate()));
+        long position = Long.parseLong(StrUtil.subBefore(value, ':', false));
+        long admitAt = Long.parseLong(StrUtil.subAfter(value, ':', false));
+        String ticket = sign(TYPE_TICKET, voucherId, userId, position, admitAt);
+        return status(voucherId, userId, position, admitAt, meta).setTicket(ticket);
+    }
+
+    /**
+     * 查询排队进度，只校验凭证不访问redis
+     *
+     * @return 凭证无效时返回null
+     */
+    public WaitingRoomStatus poll(Long voucherId, Long userId, String ticket, SeckillVoucherMeta.Meta meta) {
+        long[] values = verify(TYPE_TICKET, voucherId, userId, ticket, 2);
+        if (values == null) {
+            return null;
+        }
+        return status(voucherId, userId, values[0], values[1], meta).setTicket(ticket);
+    }
+
+    private WaitingRoomStatus status(Long voucherId, Long userId, long position, long admitAt,
+                                     SeckillVoucherMeta.Meta meta) {
+        long now = System.currentTimeMillis();
+        WaitingRoomStatus status = new WaitingRoomStatus().setPosition(position);
+        if (now >= admitAt) {
+            //轮到了，发放入场令牌
+            long expireAt = now + admissionTtl * 1000;
+            return status.setAhead(0L).setToken(sign(TYPE_ADMISSION, voucherId, userId, expireAt)).setExpireAt(expireAt);
+        }
+        //入场时间按入场速率排开，由剩余时间估算前面的人数，轮到之前的一半时间再来查询，避免所有人同时轮询
+        long wait = admitAt - now;
+        long ahead = wait * meta.getAdmitRate() / 1000;
+        long retryAfter = Math.max(MIN_RETRY, Math.min(MAX_RETRY, wait / 2));
+        return status.setAhead(ahead).setRetryAfter(retryAfter + RandomUtil.randomLong(MIN_RETRY));
+    }
+
+    /**
+     * 校验入场令牌
+     */
+    public boolean admitted(Long voucherId, Long userId, String token) {
+        long[] values = verify(TYPE_ADMISSION, voucherId, userId, token, 1);
+        return values != null && values[0] >= System.currentTimeMillis();
+    }
+
+    /**
+     * 签名的内容是 类型:优惠券id:用户id:值...，排队凭证的值是排队号和入场时间，入场令牌的值是过期时间
+     */
+    String sign(String type, Long voucherId, Long userId, long... values) {
+        StringBuilder payload = new StringBuilder(type).append(':').append(voucherId).append(':').append(userId);
+        for (long value : values) {
+            payload.append(':').append(value);
+        }
+        return Base64.encodeUrlSafe(payload.toString()) + "." + Base64.encodeUrlSafe(hmac(payload.toString()));
+    }
+
+    /**
+     * @return 签名正确且属于这个用户和优惠券时返回签名中的值，否则返回null
+     */
+    private long[] verify(String type, Long voucherId, Long userId, String token, int count) {
+        if (!enabled() || StrUtil.isBlank(token)) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            String payload = Base64.decodeStr(token.substring(0, dot));
+            byte[] signature = Base64.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, hmac(payload))) {
+                return null;
+            }
+            String[] parts = payload.split(":");
+            if (parts.length != 3 + count || !type.equals(parts[0])
+                    || !voucherId.toString().equals(parts[1]) || !userId.toString().equals(parts[2])) {
+                return null;
+            }
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = Long.parseLong(parts[3 + i]);
+            }
+            return values;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] hmac(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
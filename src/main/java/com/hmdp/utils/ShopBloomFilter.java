@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SHOP_BLOOM_ADD_CHANNEL;
+
+/**
+ * 店铺id的布隆过滤器，启动时从数据库加载全部店铺id
+ * 用于在查询redis和数据库之前拦截一定不存在的店铺id
+ * 加载失败时定时重试，加载成功后定时重建，重建期间新增的店铺先记录下来，新的过滤器就绪后再补充进去
+ */
+@Slf4j
+@Component
+public class ShopBloomFilter {
+
+    //最少按100万容量初始化，给新增店铺留出空间
+    private static final long MIN_EXPECTED_INSERTIONS = 1000000L;
+    private static final double FPP = 0.01;
+
+    private volatile BloomFilter filter;
+    //正在构建时新增的店铺id，构建完成后加入新的过滤器
+    private volatile Set<Long> building;
+    private volatile long builtAt;
+
+    @Value("${hmdp.cache.bloom.rebuild-interval:60}")
+    private long rebuildInterval;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @PostConstruct
+    public void init() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            //加载失败时放行所有请求，不影响正常查询，由定时任务重试
+            log.error("店铺布隆过滤器初始化失败", e);
+        }
+    }
+
+    /**
+     * 还没有加载成功时重试，加载成功后每隔rebuildInterval分钟重建一次，重建后已删除的店铺id不再通过
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void refresh() {
+        if (filter != null && System.currentTimeMillis() - builtAt < TimeUnit.MINUTES.toMillis(rebuildInterval)) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("重建店铺布隆过滤器失败", e);
+        }
+    }
+
+    /**
+     * 从数据库加载全部店铺id，构建新的过滤器后替换
+     *
+     * @return 加载的店铺数量
+     */
+    public synchronized int rebuild() {
+        //1.先开始记录新增的店铺，再扫描数据库，扫描之后新增的店铺一定会被记录
+        Set<Long> added = ConcurrentHashMap.newKeySet();
+        building = added;
+        try {
+            List<Object> ids = shopMapper.selectObjs(new QueryWrapper<Shop>().select("id"));
+            BloomFilter bloomFilter = new BloomFilter(Math.max(ids.size() * 2L, MIN_EXPECTED_INSERTIONS), FPP);
+            long maxId = 0;
+            for (Object id : ids) {
+                long value = ((Number) id).longValue();
+                bloomFilter.put(value);
+                maxId = Math.max(maxId, value);
+            }
+            //2.替换后新增的店铺直接加入新的过滤器，之前记录的补充进去
+            filter = bloomFilter;
+            building = null;
+            for (Long id : added) {
+                bloomFilter.put(id);
+            }
+            //3.再查一次扫描之后写入的店铺，新增消息丢失时也不会误拦截
+            List<Object> newIds = shopMapper.selectObjs(new QueryWrapper<Shop>().select("id").gt("id", maxId));
+            for (Object id : newIds) {
+                bloomFilter.put(((Number) id).longValue());
+            }
+            builtAt = System.currentTimeMillis();
+            log.info("店铺布隆过滤器构建完成，店铺数量：{}", ids.size() + newIds.size());
+            return ids.size() + newIds.size();
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * 店铺id是否可能存在，过滤器未初始化时一律返回true
+     */
+    public boolean mightContain(Long id) {
+        BloomFilter bloomFilter = filter;
+        return bloomFilter == null || bloomFilter.mightContain(id);
+    }
+
+    /**
+     * 只添加到当前节点，由订阅到新增消息的监听器调用
+     * 先记录到正在构建的集合再写入当前的过滤器，构建完成前后新增的店铺都不会丢失
+     */
+    public void add(Long id) {
+        Set<Long> added = building;
+        if (added != null) {
+            added.add(id);
+        }
+        BloomFilter bloomFilter = filter;
+        if (bloomFilter != null) {
+            bloomFilter.put(id);
+        }
+    }
+
+    /**
+     * 添加到当前节点，并广播给其它节点
+     */
+    public void publishAdd(Long id) {
+        add(id);
+        stringRedisTemplate.convertAndSend(SHOP_BLOOM_ADD_CHANNEL, id.toString());
+    }
+}
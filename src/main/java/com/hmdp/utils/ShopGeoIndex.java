@@ -0,0 +1,433 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的店铺坐标索引，每个店铺类型一份
+ * 坐标按经纬度划分成固定大小的网格，店铺按网格编号排序后存放在基本类型数组中，
+ * 查询时只扫描与圆形范围相交的网格；数据不可变，店铺变更时复制一份新的索引替换(copy-on-write)
+ * 某个类型的索引还没加载好时查询返回null，由调用方回退到redis的GEOSEARCH
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex {
+
+    //网格边长，单位为度，约5.5公里
+    private static final double CELL_SIZE = 0.05;
+    //与redis的GEO命令使用相同的地球半径，保证两种查询算出的距离一致
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    private static final ExecutorService LOAD_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1000));
+
+    private final Map<Long, TypeIndex> indexes = new ConcurrentHashMap<>();
+    //正在加载的店铺类型，避免重复提交加载任务
+    private final Map<Long, Boolean> loading = new ConcurrentHashMap<>();
+    //加载中的店铺类型，以及加载期间变更过的店铺的最新数据，索引替换之后重新应用
+    private final Map<Long, Map<Long, Shop>> changes = new ConcurrentHashMap<>();
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    /**
+     * 查询距离某个坐标一定范围内的店铺，按距离从近到远排序，距离相同时按id排序
+     *
+     * @param typeId        店铺类型
+     * @param x             经度
+     * @param y             纬度
+     * @param radius        范围，单位米
+     * @param afterDistance 只返回排在(afterDistance, afterId)之后的店铺，从头查询时传-1
+     * @param afterId       同上
+     * @param skip          跳过的店铺数量
+     * @param size          返回的店铺数量
+     * @return 查询结果，索引还没加载时返回null
+     */
+    public List<Hit> search(Long typeId, double x, double y, double radius,
+                            double afterDistance, long afterId, int skip, int size) {
+        TypeIndex index = indexes.get(typeId);
+        if (index == null) {
+            loadAsync(typeId);
+            return null;
+        }
+        return index.search(x, y, radius, afterDistance, afterId, skip, size);
+    }
+
+    public List<Hit> search(Long typeId, double x, double y, double radius, int skip, int size) {
+        return search(typeId, x, y, radius, -1, Long.MIN_VALUE, skip, size);
+    }
+
+    /**
+     * 从数据库加载某个类型的全部店铺坐标，替换原有索引
+     *
+     * @return 加载的店铺数量
+     */
+    public synchronized int load(Long typeId) {
+        beginLoad(typeId);
+        try {
+            return load(typeId, shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "x", "y").eq("type_id", typeId).isNotNull("x").isNotNull("y")));
+        } finally {
+            changes.remove(typeId);
+        }
+    }
+
+    /**
+     * 开始记录某个类型加载期间的店铺变更
+     */
+    void beginLoad(Long typeId) {
+        changes.put(typeId, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * 用读取到的店铺替换某个类型的索引，再重新应用加载期间的店铺变更，没有坐标的店铺不加入索引
+     */
+    int load(Long typeId, List<Shop> shops) {
+        int n = 0;
+        long[] ids = new long[shops.size()];
+        double[] xs = new double[shops.size()];
+        double[] ys = new double[shops.size()];
+        for (Shop shop : shops) {
+            if (shop.getX() == null || shop.getY() == null) {
+                continue;
+            }
+            ids[n] = shop.getId();
+            xs[n] = shop.getX();
+            ys[n] = shop.getY();
+            n++;
+        }
+        indexes.put(typeId, new TypeIndex(Arrays.copyOf(ids, n), Arrays.copyOf(xs, n), Arrays.copyOf(ys, n)));
+        //索引替换之后的变更直接更新到新索引上，之前的变更可能被加载读到的旧数据覆盖，按记录的最新数据再更新一次
+        Map<Long, Shop> changed = changes.remove(typeId);
+        if (changed != null) {
+            changed.forEach(this::apply);
+        }
+        return n;
+    }
+
+    private void loadAsync(Long typeId) {
+        if (loading.putIfAbsent(typeId, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            LOAD_EXECUTOR.execute(() -> {
+                try {
+                    log.info("加载店铺坐标索引，类型：{}，店铺数量：{}", typeId, load(typeId));
+                } catch (Exception e) {
+                    log.error("加载店铺坐标索引失败，类型：{}", typeId, e);
+                } finally {
+                    loading.remove(typeId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(typeId);
+        }
+    }
+
+    /**
+     * 店铺新增或修改后，从数据库重新读取坐标和类型，更新已加载的索引，由订阅到店铺变更消息的监听器调用
+     */
+    public void refresh(Long shopId) {
+        refresh(shopId, shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "type_id", "x", "y").eq("id", shopId)));
+    }
+
+    /**
+     * 按店铺的最新数据更新已加载的索引，正在加载的类型先记录下来，加载完成后重新应用
+     *
+     * @param shop 店铺的最新数据，店铺已删除时为null
+     */
+    void refresh(Long shopId, Shop shop) {
+        for (Map<Long, Shop> changed : changes.values()) {
+            changed.put(shopId, shop == null ? new Shop().setId(shopId) : shop);
+        }
+        apply(shopId, shop);
+    }
+
+    /**
+     * 从其它类型的索引中移除店铺，再写入所属类型的索引，店铺可能修改了类型；没有类型的店铺表示已删除
+     */
+    private void apply(Long shopId, Shop shop) {
+        Long shopTypeId = shop == null ? null : shop.getTypeId();
+        for (Map.Entry<Long, TypeIndex> entry : indexes.entrySet()) {
+            if (!entry.getKey().equals(shopTypeId) && entry.getValue().contains(shopId)) {
+                indexes.computeIfPresent(entry.getKey(), (typeId, old) -> old.remove(shopId));
+            }
+        }
+        if (shopTypeId == null) {
+            return;
+        }
+        if (shop.getX() != null && shop.getY() != null) {
+            indexes.computeIfPresent(shopTypeId, (typeId, old) -> old.upsert(shopId, shop.getX(), shop.getY()));
+        } else {
+            indexes.computeIfPresent(shopTypeId, (typeId, old) -> old.remove(shopId));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        LOAD_EXECUTOR.shutdown();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Hit {
+        private Long id;
+        /**
+         * 距离，单位米
+         */
+        private Double distance;
+    }
+
+    /**
+     * 一个店铺类型的索引，创建后不再修改
+     */
+    private static final class TypeIndex {
+
+        //按网格编号排序的店铺数据
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+        //去重后的网格编号，以及每个网格在店铺数组中的起始位置，cellStart比cellKeys多一位作为结尾
+        private final long[] cellKeys;
+        private final int[] cellStart;
+
+        TypeIndex(long[] ids, double[] xs, double[] ys) {
+            int n = ids.length;
+            long[] keys = new long[n];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = cellKey(cellOf(xs[i]), cellOf(ys[i]));
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+            this.ids = new long[n];
+            this.xs = new double[n];
+            this.ys = new double[n];
+            long[] distinctKeys = new long[n];
+            int[] starts = new int[n + 1];
+            int cells = 0;
+            for (int i = 0; i < n; i++) {
+                int j = order[i];
+                this.ids[i] = ids[j];
+                this.xs[i] = xs[j];
+                this.ys[i] = ys[j];
+                if (cells == 0 || distinctKeys[cells - 1] != keys[j]) {
+                    distinctKeys[cells] = keys[j];
+                    starts[cells++] = i;
+                }
+            }
+            starts[cells] = n;
+            this.cellKeys = Arrays.copyOf(distinctKeys, cells);
+            this.cellStart = Arrays.copyOf(starts, cells + 1);
+        }
+
+        boolean contains(long id) {
+            return indexOf(id) >= 0;
+        }
+
+        private int indexOf(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        TypeIndex upsert(long id, double x, double y) {
+            int i = indexOf(id);
+            if (i >= 0) {
+                long[] newIds = ids.clone();
+                double[] newXs = xs.clone();
+                double[] newYs = ys.clone();
+                newXs[i] = x;
+                newYs[i] = y;
+                return new TypeIndex(newIds, newXs, newYs);
+            }
+            int n = ids.length;
+            long[] newIds = Arrays.copyOf(ids, n + 1);
+            double[] newXs = Arrays.copyOf(xs, n + 1);
+            double[] newYs = Arrays.copyOf(ys, n + 1);
+            newIds[n] = id;
+            newXs[n] = x;
+            newYs[n] = y;
+            return new TypeIndex(newIds, newXs, newYs);
+        }
+
+        TypeIndex remove(long id) {
+            int i = indexOf(id);
+            if (i < 0) {
+                return this;
+            }
+            int n = ids.length;
+            long[] newIds = new long[n - 1];
+            double[] newXs = new double[n - 1];
+            double[] newYs = new double[n - 1];
+            System.arraycopy(ids, 0, newIds, 0, i);
+            System.arraycopy(ids, i + 1, newIds, i, n - i - 1);
+            System.arraycopy(xs, 0, newXs, 0, i);
+            System.arraycopy(xs, i + 1, newXs, i, n - i - 1);
+            System.arraycopy(ys, 0, newYs, 0, i);
+            System.arraycopy(ys, i + 1, newYs, i, n - i - 1);
+            return new TypeIndex(newIds, newXs, newYs);
+        }
+
+        List<Hit> search(double x, double y, double radius, double afterDistance, long afterId, int skip, int size) {
+            if (skip < 0 || size <= 0 || skip >= ids.length) {
+                return Collections.emptyList();
+            }
+            //1.计算圆形范围覆盖的网格，经度方向的跨度随纬度变大，统计这些网格中的店铺数量
+            double dy = radius / METERS_PER_DEGREE;
+            double dx = dy / Math.max(Math.cos(Math.toRadians(y)), 0.01);
+            int minCx = cellOf(x - dx), maxCx = cellOf(x + dx);
+            int minCy = cellOf(y - dy), maxCy = cellOf(y + dy);
+            int[] cells = new int[(maxCx - minCx + 1) * (maxCy - minCy + 1)];
+            int cellCount = 0;
+            int candidates = 0;
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                for (int cx = minCx; cx <= maxCx; cx++) {
+                    int cell = Arrays.binarySearch(cellKeys, cellKey(cx, cy));
+                    if (cell >= 0) {
+                        cells[cellCount++] = cell;
+                        candidates += cellStart[cell + 1] - cellStart[cell];
+                    }
+                }
+            }
+            if (skip >= candidates) {
+                return Collections.emptyList();
+            }
+            //2.扫描这些网格，用大顶堆保留排序最靠前的skip+size个店铺，堆的大小不超过范围内的店铺数量
+            Heap heap = new Heap((int) Math.min((long) skip + size, candidates));
+            for (int c = 0; c < cellCount; c++) {
+                int cell = cells[c];
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    //先用经纬度差快速排除范围外的店铺
+                    if (Math.abs(ys[i] - y) > dy || Math.abs(xs[i] - x) > dx) {
+                        continue;
+                    }
+                    double d = distance(x, y, xs[i], ys[i]);
+                    if (d <= radius && compare(d, ids[i], afterDistance, afterId) > 0) {
+                        heap.offer(d, ids[i]);
+                    }
+                }
+            }
+            //3.堆中的元素从远到近依次弹出，放到结果的末尾
+            int count = heap.size;
+            if (count <= skip) {
+                return Collections.emptyList();
+            }
+            Hit[] sorted = new Hit[count];
+            for (int k = count - 1; k >= 0; k--) {
+                sorted[k] = new Hit(heap.ids[0], heap.distances[0]);
+                heap.poll();
+            }
+            return new ArrayList<>(Arrays.asList(sorted).subList(skip, count));
+        }
+    }
+
+    /**
+     * 容量固定的大顶堆，堆顶是排序最靠后的店铺
+     */
+    private static final class Heap {
+
+        private final double[] distances;
+        private final long[] ids;
+        private int size;
+
+        Heap(int capacity) {
+            this.distances = new double[capacity];
+            this.ids = new long[capacity];
+        }
+
+        void offer(double d, long id) {
+            if (size < ids.length) {
+                siftUp(size++, d, id);
+            } else if (compare(d, id, distances[0], ids[0]) < 0) {
+                siftDown(0, d, id);
+            }
+        }
+
+        void poll() {
+            size--;
+            if (size > 0) {
+                siftDown(0, distances[size], ids[size]);
+            }
+        }
+
+        private void siftUp(int k, double d, long id) {
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (compare(d, id, distances[parent], ids[parent]) <= 0) {
+                    break;
+                }
+                distances[k] = distances[parent];
+                ids[k] = ids[parent];
+                k = parent;
+            }
+            distances[k] = d;
+            ids[k] = id;
+        }
+
+        private void siftDown(int k, double d, long id) {
+            int half = size >>> 1;
+            while (k < half) {
+                int child = 2 * k + 1;
+                if (child + 1 < size && compare(distances[child + 1], ids[child + 1], distances[child], ids[child]) > 0) {
+                    child++;
+                }
+                if (compare(d, id, distances[child], ids[child]) >= 0) {
+                    break;
+                }
+                distances[k] = distances[child];
+                ids[k] = ids[child];
+                k = child;
+            }
+            distances[k] = d;
+            ids[k] = id;
+        }
+    }
+
+    private static int compare(double d1, long id1, double d2, long id2) {
+        int c = Double.compare(d1, d2);
+        return c != 0 ? c : Long.compare(id1, id2);
+    }
+
+    private static int cellOf(double degree) {
+        return (int) Math.floor(degree / CELL_SIZE);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cy << 32) | (cx & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 两个坐标之间的球面距离(haversine)，单位米
+     */
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+}
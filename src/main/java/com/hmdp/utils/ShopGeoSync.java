@@ -0,0 +1,231 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.NumberUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILD_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILD_LOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILD_SUFFIX;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILD_TTL;
+
+/**
+ * 维护redis中按类型划分的店铺坐标集合 shop:geo:{typeId}
+ * 店铺新增和修改时由缓存发件箱调用增量更新；全量重建时流式读取tb_shop，分批通过管道写入临时key，完成后替换
+ * 重建标记保存在redis中，所有节点的增量更新在重建期间同时写入临时key并记录店铺id，
+ * 扫描结束后按数据库的最新数据重新写入这些店铺，避免扫描读到的旧坐标覆盖增量更新
+ */
+@Slf4j
+@Component
+public class ShopGeoSync {
+
+    //每批写入redis的店铺数量
+    private static final int BATCH_SIZE = 1000;
+
+    private static final ExecutorService REBUILD_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 按数据库中的最新数据更新店铺坐标
+     *
+     * @param shopId    店铺id
+     * @param oldTypeId 修改前的店铺类型，类型变化时从原来的集合中移除，新增店铺时为null
+     */
+    public void sync(Long shopId, Long oldTypeId) {
+        //先检查重建标记再读数据库：标记之前提交的修改一定能被重建的扫描读到
+        boolean rebuilding = Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_GEO_REBUILD_LOCK_KEY));
+        Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "type_id", "x", "y").eq("id", shopId));
+        String member = shopId.toString();
+        if (rebuilding) {
+            stringRedisTemplate.opsForSet().add(SHOP_GEO_REBUILD_DIRTY_KEY, member);
+        }
+        if (oldTypeId != null && (shop == null || !oldTypeId.equals(shop.getTypeId()))) {
+            stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + oldTypeId, member);
+            if (rebuilding) {
+                stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + oldTypeId + SHOP_GEO_REBUILD_SUFFIX, member);
+            }
+        }
+        if (shop == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        Point point = new Point(shop.getX(), shop.getY());
+        stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(), point, member);
+        if (rebuilding) {
+            stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId() + SHOP_GEO_REBUILD_SUFFIX, point, member);
+        }
+    }
+
+    /**
+     * 在后台全量重建所有类型的坐标集合，同一时间整个集群只有一个重建任务
+     *
+     * @return 是否开始重建，已经有重建任务在执行时返回false
+     */
+    public boolean rebuildAsync() {
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(SHOP_GEO_REBUILD_LOCK_KEY, "1", SHOP_GEO_REBUILD_TTL, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return false;
+        }
+        try {
+            REBUILD_EXECUTOR.execute(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    log.error("重建店铺坐标失败", e);
+                } finally {
+                    stringRedisTemplate.delete(SHOP_GEO_REBUILD_DIRTY_KEY);
+                    stringRedisTemplate.delete(SHOP_GEO_REBUILD_LOCK_KEY);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            stringRedisTemplate.delete(SHOP_GEO_REBUILD_LOCK_KEY);
+            return false;
+        }
+    }
+
+    /**
+     * 全量重建，内存中最多保留一批店铺，调用前需要已经设置重建标记
+     */
+    private void rebuild() {
+        long begin = System.currentTimeMillis();
+        //1.清掉上次重建失败遗留的临时key，之后的增量更新都会记录下来
+        stringRedisTemplate.delete(SHOP_GEO_REBUILD_DIRTY_KEY);
+        for (String key : RedisScanUtils.scanKeys(stringRedisTemplate, SHOP_GEO_KEY + "*" + SHOP_GEO_REBUILD_SUFFIX)) {
+            stringRedisTemplate.delete(key);
+        }
+        //2.扫描全表写入临时key，游标需要在事务中保持数据库连接
+        Set<Long> typeIds = new HashSet<>();
+        Integer count = transactionTemplate.execute(status -> {
+            int total = 0;
+            List<Shop> batch = new ArrayList<>(BATCH_SIZE);
+            try (Cursor<Shop> cursor = shopMapper.scanShopGeo()) {
+                for (Shop shop : cursor) {
+                    if (shop.getX() == null || shop.getY() == null) {
+                        continue;
+                    }
+                    batch.add(shop);
+                    if (batch.size() == BATCH_SIZE) {
+                        total += write(batch, typeIds);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return total + write(batch, typeIds);
+        });
+        //3.扫描期间发生变更的店铺，扫描可能读到的是修改前的数据，按最新数据重新写入
+        Set<String> dirty = stringRedisTemplate.opsForSet().members(SHOP_GEO_REBUILD_DIRTY_KEY);
+        if (dirty != null) {
+            for (String member : dirty) {
+                resync(member, typeIds);
+            }
+        }
+        //4.全部写完之后再替换，查询不会看到只写了一半的集合；已经没有店铺的类型删除原来的集合
+        for (Long typeId : typeIds) {
+            String rebuildKey = SHOP_GEO_KEY + typeId + SHOP_GEO_REBUILD_SUFFIX;
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(rebuildKey))) {
+                stringRedisTemplate.rename(rebuildKey, SHOP_GEO_KEY + typeId);
+            } else {
+                stringRedisTemplate.delete(SHOP_GEO_KEY + typeId);
+            }
+        }
+        for (String key : RedisScanUtils.scanKeys(stringRedisTemplate, SHOP_GEO_KEY + "*")) {
+            String typeId = key.substring(SHOP_GEO_KEY.length());
+            //扫描结束后才新增店铺的类型也不在typeIds中，再查一次数据库确认
+            if (NumberUtil.isLong(typeId) && !typeIds.contains(Long.valueOf(typeId))
+                    && shopMapper.selectCount(new QueryWrapper<Shop>().eq("type_id", typeId).isNotNull("x")) == 0) {
+                stringRedisTemplate.delete(key);
+            }
+        }
+        log.info("重建店铺坐标完成，店铺数量：{}，类型数量：{}，扫描期间变更的店铺：{}，耗时{}ms",
+                count, typeIds.size(), dirty == null ? 0 : dirty.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按类型分组后通过管道一次性写入，写完清空这一批，并延长重建标记的有效期
+     */
+    private int write(List<Shop> batch, Set<Long> typeIds) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Map<byte[], Point>> groups = new HashMap<>();
+        for (Shop shop : batch) {
+            typeIds.add(shop.getTypeId());
+            groups.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                    .put(shop.getId().toString().getBytes(StandardCharsets.UTF_8), new Point(shop.getX(), shop.getY()));
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<Long, Map<byte[], Point>> entry : groups.entrySet()) {
+                byte[] key = (SHOP_GEO_KEY + entry.getKey() + SHOP_GEO_REBUILD_SUFFIX).getBytes(StandardCharsets.UTF_8);
+                connection.geoAdd(key, entry.getValue());
+            }
+            return null;
+        });
+        stringRedisTemplate.expire(SHOP_GEO_REBUILD_LOCK_KEY, SHOP_GEO_REBUILD_TTL, TimeUnit.SECONDS);
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    /**
+     * 按数据库的最新数据重新写入一个店铺的临时key，先从所有类型的临时key中移除
+     */
+    private void resync(String member, Set<Long> typeIds) {
+        Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "type_id", "x", "y").eq("id", member));
+        for (Long typeId : typeIds) {
+            if (shop == null || !typeId.equals(shop.getTypeId())) {
+                stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + typeId + SHOP_GEO_REBUILD_SUFFIX, member);
+            }
+        }
+        if (shop == null || shop.getX() == null || shop.getY() == null) {
+            if (shop != null) {
+                stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + shop.getTypeId() + SHOP_GEO_REBUILD_SUFFIX, member);
+            }
+            return;
+        }
+        typeIds.add(shop.getTypeId());
+        stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId() + SHOP_GEO_REBUILD_SUFFIX,
+                new Point(shop.getX(), shop.getY()), member);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        REBUILD_EXECUTOR.shutdown();
+    }
+}
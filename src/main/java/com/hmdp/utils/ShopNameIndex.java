@@ -0,0 +1,468 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * 进程内的店铺名称索引，支持中文的子串搜索和前缀联想
+ * 名称统一转为半角小写后按单字和相邻两字(bigram)建立倒排表，查询时求所有bigram倒排表的交集，再校验子串并排序；
+ * 店铺按销量从高到低编号，常见的关键字只在销量最高的一批匹配中排序，前缀匹配通过按名称排序的数组单独查找；
+ * 前缀联想在前缀范围较小时扫描整个范围，范围较大时按编号遍历倒排表，取到的前几个前缀匹配就是销量最高的；
+ * 主索引不可变，店铺变更记录在增量表中，查询时合并两者，增量过多时后台重建主索引
+ * 主索引还没加载好时查询返回null，由调用方回退到数据库查询
+ */
+@Slf4j
+@Component
+public class ShopNameIndex {
+
+    //增量表超过这个数量时重建主索引
+    private static final int COMPACT_THRESHOLD = 1000;
+    //搜索时前缀匹配最多扫描的店铺数量；联想时前缀范围不超过这个数量才按名称顺序扫描整个范围
+    private static final int PREFIX_SCAN_LIMIT = 1000;
+    //子串匹配最多参与排序的店铺数量
+    private static final int MATCH_LIMIT = 2000;
+
+    private static final ExecutorService BUILD_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.DiscardPolicy());
+
+    private volatile Snapshot snapshot;
+    //主索引之后发生变更的店铺，名称为null表示店铺已不存在
+    private final Map<Long, Doc> delta = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    /**
+     * 按名称搜索店铺，最多只对前MATCH_LIMIT个结果分页
+     *
+     * @param keyword 关键字
+     * @param skip    跳过的数量
+     * @param size    返回的数量
+     * @return 按相关度排序的店铺id，索引还没加载时返回null
+     */
+    public List<Long> search(String keyword, int skip, int size) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            buildAsync();
+            return null;
+        }
+        String q = normalize(keyword);
+        if (q.isEmpty() || size <= 0 || skip < 0 || skip >= MATCH_LIMIT) {
+            return new ArrayList<>();
+        }
+        int limit = Math.min(skip + size, MATCH_LIMIT);
+        //大顶堆，堆顶是当前排名最靠后的结果
+        PriorityQueue<long[]> heap = new PriorityQueue<>(limit + 1, RANK_ORDER.reversed());
+        //1.主索引的前缀匹配，包括完全匹配
+        Set<Integer> prefixDocs = new HashSet<>();
+        int from = current.lowerBound(q);
+        for (int k = from, end = Math.min(current.byName.length, from + PREFIX_SCAN_LIMIT); k < end; k++) {
+            int doc = current.byName[k];
+            if (!current.names[doc].startsWith(q)) {
+                break;
+            }
+            prefixDocs.add(doc);
+            long id = current.ids[doc];
+            if (!delta.containsKey(id)) {
+                offer(heap, limit, rank(current.names[doc], q, current.sold[doc]), id);
+            }
+        }
+        //2.主索引的子串匹配：按编号(销量从高到低)遍历倒排表的交集，校验子串
+        int[] matched = new int[1];
+        current.intersect(q, doc -> {
+            long id = current.ids[doc];
+            if (prefixDocs.contains(doc) || delta.containsKey(id) || !current.names[doc].contains(q)) {
+                return true;
+            }
+            offer(heap, limit, rank(current.names[doc], q, current.sold[doc]), id);
+            return ++matched[0] < MATCH_LIMIT;
+        });
+        //3.增量表：数量很少，直接逐个匹配
+        for (Map.Entry<Long, Doc> entry : delta.entrySet()) {
+            Doc doc = entry.getValue();
+            if (doc.name != null && doc.name.contains(q)) {
+                offer(heap, limit, rank(doc.name, q, doc.sold), entry.getKey());
+            }
+        }
+        return drain(heap, skip);
+    }
+
+    /**
+     * 名称前缀联想，按销量从高到低返回
+     *
+     * @return 只包含id和名称的店铺，索引还没加载时返回null
+     */
+    public List<Shop> suggest(String prefix, int size) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            buildAsync();
+            return null;
+        }
+        String q = normalize(prefix);
+        if (q.isEmpty() || size <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<long[]> heap = new PriorityQueue<>(size + 1, RANK_ORDER.reversed());
+        Map<Long, String> displayNames = new HashMap<>();
+        //1.主索引：前缀范围较小时扫描整个范围
+        int from = current.lowerBound(q);
+        int to = current.lowerBound(q + Character.MAX_VALUE);
+        if (to - from <= PREFIX_SCAN_LIMIT) {
+            for (int k = from; k < to; k++) {
+                int doc = current.byName[k];
+                long id = current.ids[doc];
+                if (!delta.containsKey(id) && offer(heap, size, -current.sold[doc], id)) {
+                    displayNames.put(id, current.rawNames[doc]);
+                }
+            }
+        } else {
+            //范围较大时按编号(销量从高到低)遍历倒排表的交集，取满size个前缀匹配即可停止
+            int[] found = new int[1];
+            current.intersect(q, doc -> {
+                long id = current.ids[doc];
+                if (delta.containsKey(id) || !current.names[doc].startsWith(q)) {
+                    return true;
+                }
+                offer(heap, size, -current.sold[doc], id);
+                displayNames.put(id, current.rawNames[doc]);
+                return ++found[0] < size;
+            });
+        }
+        //2.增量表
+        for (Map.Entry<Long, Doc> entry : delta.entrySet()) {
+            Doc doc = entry.getValue();
+            if (doc.name != null && doc.name.startsWith(q) && offer(heap, size, -doc.sold, entry.getKey())) {
+                displayNames.put(entry.getKey(), doc.rawName);
+            }
+        }
+        List<Long> ids = drain(heap, 0);
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            shops.add(new Shop().setId(id).setName(displayNames.get(id)));
+        }
+        return shops;
+    }
+
+    /**
+     * 店铺新增或修改后，从数据库读取最新的名称记入增量表，由订阅到店铺变更消息的监听器调用
+     */
+    public void refresh(Long shopId) {
+        refresh(shopId, shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "name", "sold").eq("id", shopId)));
+    }
+
+    /**
+     * 记录店铺的最新名称
+     *
+     * @param shop 店铺的最新数据，店铺已删除时为null
+     */
+    void refresh(Long shopId, Shop shop) {
+        delta.put(shopId, shop == null
+                ? new Doc(null, null, 0, sequence.incrementAndGet())
+                : new Doc(shop.getName(), normalize(shop.getName()), sold(shop), sequence.incrementAndGet()));
+        if (delta.size() > COMPACT_THRESHOLD) {
+            buildAsync();
+        }
+    }
+
+    /**
+     * 从数据库加载全部店铺名称，重建主索引
+     *
+     * @return 索引的店铺数量
+     */
+    public int build() {
+        //重建开始之前的变更都会包含在查出的数据里
+        long seq = sequence.get();
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>().select("id", "name", "sold"));
+        build(shops, seq);
+        return shops.size();
+    }
+
+    void build(List<Shop> shops, long seq) {
+        snapshot = new Snapshot(shops);
+        delta.values().removeIf(doc -> doc.seq <= seq);
+    }
+
+    private void buildAsync() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            BUILD_EXECUTOR.execute(() -> {
+                try {
+                    long begin = System.currentTimeMillis();
+                    int count = build();
+                    log.info("构建店铺名称索引完成，店铺数量：{}，耗时{}ms", count, System.currentTimeMillis() - begin);
+                } catch (Exception e) {
+                    log.error("构建店铺名称索引失败", e);
+                } finally {
+                    building.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            building.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        BUILD_EXECUTOR.shutdown();
+    }
+
+    //排序值越小越靠前，排序值相同时id小的靠前
+    private static final Comparator<long[]> RANK_ORDER =
+            Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]);
+
+    private static boolean offer(PriorityQueue<long[]> heap, int limit, long rank, long id) {
+        long[] entry = {rank, id};
+        if (heap.size() < limit) {
+            heap.offer(entry);
+            return true;
+        }
+        if (RANK_ORDER.compare(entry, heap.peek()) < 0) {
+            heap.poll();
+            heap.offer(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private static List<Long> drain(PriorityQueue<long[]> heap, int skip) {
+        Long[] ids = new Long[heap.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = heap.poll()[1];
+        }
+        if (ids.length <= skip) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(ids).subList(skip, ids.length));
+    }
+
+    /**
+     * 相关度排序值：完全匹配 > 前缀匹配 > 匹配位置靠前 > 名称更短 > 销量更高
+     */
+    private static long rank(String name, String q, int sold) {
+        long exact = name.equals(q) ? 0 : 1;
+        long position = Math.min(name.indexOf(q), 1023);
+        long length = Math.min(name.length(), 1023);
+        return exact << 60 | position << 50 | length << 40 | ((1L << 40) - 1 - Math.min(sold, (1L << 40) - 1));
+    }
+
+    private static int sold(Shop shop) {
+        return shop.getSold() == null ? 0 : shop.getSold();
+    }
+
+    /**
+     * 全角转半角、转小写并去掉空白
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return StrUtil.cleanBlank(Convert.toDBC(text)).toLowerCase();
+    }
+
+    /**
+     * 长度为1时取单字，否则取所有相邻两字，每个gram用一个int表示
+     */
+    private static int[] grams(String text) {
+        if (text.length() == 1) {
+            return new int[]{text.charAt(0)};
+        }
+        int[] grams = new int[text.length() - 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = bigram(text.charAt(i), text.charAt(i + 1));
+        }
+        return grams;
+    }
+
+    private static int bigram(char a, char b) {
+        return a << 16 | b;
+    }
+
+    private static final class Doc {
+        private final String rawName;
+        private final String name;
+        private final int sold;
+        private final long seq;
+
+        Doc(String rawName, String name, int sold, long seq) {
+            this.rawName = rawName;
+            this.name = name;
+            this.sold = sold;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * 不可变的主索引，店铺用数组下标表示，倒排表中的下标升序排列
+     */
+    private static final class Snapshot {
+
+        private final long[] ids;
+        private final String[] rawNames;
+        private final String[] names;
+        private final int[] sold;
+        private final Map<Integer, int[]> postings;
+        //按名称排序的店铺下标，用于前缀查找
+        private final int[] byName;
+
+        Snapshot(List<Shop> source) {
+            //按销量从高到低编号，销量相同时id小的在前，与排序值的顺序一致
+            List<Shop> shops = new ArrayList<>(source);
+            shops.sort(Comparator.comparingInt(ShopNameIndex::sold).reversed().thenComparing(Shop::getId));
+            int n = shops.size();
+            ids = new long[n];
+            rawNames = new String[n];
+            names = new String[n];
+            sold = new int[n];
+            for (int i = 0; i < n; i++) {
+                Shop shop = shops.get(i);
+                ids[i] = shop.getId();
+                rawNames[i] = shop.getName() == null ? "" : shop.getName();
+                names[i] = normalize(rawNames[i]);
+                sold[i] = sold(shop);
+            }
+            //1.统计每个gram的文档数，再一次性分配倒排表
+            Map<Integer, int[]> counts = new HashMap<>();
+            int[][] docGrams = new int[n][];
+            for (int i = 0; i < n; i++) {
+                docGrams[i] = docGrams(names[i]);
+                for (int gram : docGrams[i]) {
+                    counts.computeIfAbsent(gram, k -> new int[1])[0]++;
+                }
+            }
+            postings = new HashMap<>(counts.size() * 2);
+            for (Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+                postings.put(entry.getKey(), new int[entry.getValue()[0]]);
+                entry.getValue()[0] = 0;
+            }
+            //2.按下标顺序填充，倒排表天然有序
+            for (int i = 0; i < n; i++) {
+                for (int gram : docGrams[i]) {
+                    postings.get(gram)[counts.get(gram)[0]++] = i;
+                }
+            }
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> names[i]));
+            byName = new int[n];
+            for (int i = 0; i < n; i++) {
+                byName[i] = order[i];
+            }
+        }
+
+        /**
+         * 一个名称包含的全部单字和bigram，去重
+         */
+        private static int[] docGrams(String name) {
+            int[] grams = new int[name.length() * 2];
+            int size = 0;
+            for (int i = 0; i < name.length(); i++) {
+                grams[size++] = name.charAt(i);
+                if (i + 1 < name.length()) {
+                    grams[size++] = bigram(name.charAt(i), name.charAt(i + 1));
+                }
+            }
+            int[] sorted = Arrays.copyOf(grams, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+
+        /**
+         * 关键字每个gram的倒排表，按长度从短到长排列，任意一个gram不存在时返回空数组
+         */
+        int[][] postingLists(String q) {
+            int[] grams = grams(q);
+            int[][] lists = new int[grams.length][];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) {
+                    return new int[0][];
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+            return lists;
+        }
+
+        /**
+         * 按编号从小到大遍历包含关键字所有gram的店铺，即所有倒排表的交集，visitor返回false时停止
+         */
+        void intersect(String q, IntPredicate visitor) {
+            int[][] lists = postingLists(q);
+            if (lists.length == 0) {
+                return;
+            }
+            int[] positions = new int[lists.length];
+            candidates:
+            for (int doc : lists[0]) {
+                for (int j = 1; j < lists.length; j++) {
+                    int index = Arrays.binarySearch(lists[j], positions[j], lists[j].length, doc);
+                    if (index < 0) {
+                        positions[j] = -index - 1;
+                        if (positions[j] >= lists[j].length) {
+                            return;
+                        }
+                        continue candidates;
+                    }
+                    positions[j] = index + 1;
+                }
+                if (!visitor.test(doc)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 第一个名称不小于prefix的位置
+         */
+        int lowerBound(String prefix) {
+            int low = 0;
+            int high = byName.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (names[byName[mid]].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
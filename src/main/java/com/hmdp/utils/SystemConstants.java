@@ -5,4 +5,6 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final String SHOP_TYPE_LIST_CACHE = "shop-type:list";
+    public static final String VOUCHER_LIST_CACHE = "voucher:list";
 }
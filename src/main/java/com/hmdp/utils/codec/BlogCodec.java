@@ -0,0 +1,94 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Blog;
+
+/**
+ * 探店笔记的二进制编码，字段编号一旦确定不能修改
+ */
+public class BlogCodec implements EntityCodec<Blog> {
+
+    @Override
+    public int tag() {
+        return 2;
+    }
+
+    @Override
+    public Class<Blog> type() {
+        return Blog.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(Blog value, ByteWriter writer) {
+        writer.writeLong(1, value.getId());
+        writer.writeLong(2, value.getShopId());
+        writer.writeLong(3, value.getUserId());
+        writer.writeString(4, value.getIcon());
+        writer.writeString(5, value.getName());
+        writer.writeBoolean(6, value.getIsLike());
+        writer.writeString(7, value.getTitle());
+        writer.writeString(8, value.getImages());
+        writer.writeString(9, value.getContent());
+        writer.writeInt(10, value.getLiked());
+        writer.writeInt(11, value.getComments());
+        writer.writeDateTime(12, value.getCreateTime());
+        writer.writeDateTime(13, value.getUpdateTime());
+        writer.endFields();
+    }
+
+    @Override
+    public Blog read(ByteReader reader, int version) {
+        Blog value = new Blog();
+        int field;
+        while ((field = reader.nextField()) != 0) {
+            switch (field) {
+                case 1:
+                    value.setId(reader.readLong());
+                    break;
+                case 2:
+                    value.setShopId(reader.readLong());
+                    break;
+                case 3:
+                    value.setUserId(reader.readLong());
+                    break;
+                case 4:
+                    value.setIcon(reader.readString());
+                    break;
+                case 5:
+                    value.setName(reader.readString());
+                    break;
+                case 6:
+                    value.setIsLike(reader.readBoolean());
+                    break;
+                case 7:
+                    value.setTitle(reader.readString());
+                    break;
+                case 8:
+                    value.setImages(reader.readString());
+                    break;
+                case 9:
+                    value.setContent(reader.readString());
+                    break;
+                case 10:
+                    value.setLiked(reader.readInt());
+                    break;
+                case 11:
+                    value.setComments(reader.readInt());
+                    break;
+                case 12:
+                    value.setCreateTime(reader.readDateTime());
+                    break;
+                case 13:
+                    value.setUpdateTime(reader.readDateTime());
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 二进制编码的读取器，与ByteWriter对应
+ */
+public class ByteReader {
+
+    private final byte[] buf;
+    private int pos;
+    private int wireType;
+
+    public ByteReader(byte[] buf, int offset) {
+        this.buf = buf;
+        this.pos = offset;
+    }
+
+    public int readByte() {
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readVarLong() {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    /**
+     * 读取下一个字段的编号，返回0表示字段已经读完
+     */
+    public int nextField() {
+        long tag = readVarLong();
+        wireType = (int) (tag & 0x7);
+        return (int) (tag >>> 3);
+    }
+
+    public long readLong() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public int readInt() {
+        return (int) readLong();
+    }
+
+    public boolean readBoolean() {
+        return readLong() != 0;
+    }
+
+    public double readDouble() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) (buf[pos++] & 0xFF) << (i << 3);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public String readString() {
+        int len = (int) readVarLong();
+        String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return s;
+    }
+
+    public LocalDateTime readDateTime() {
+        return toDateTime(readLong());
+    }
+
+    /**
+     * 毫秒时间戳转换为时间，与ByteWriter写入时的转换方式对应
+     */
+    public static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1000000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 跳过不认识的字段
+     */
+    public void skip() {
+        switch (wireType) {
+            case ByteWriter.WIRE_VARINT:
+                readVarLong();
+                break;
+            case ByteWriter.WIRE_FIXED64:
+                pos += 8;
+                break;
+            case ByteWriter.WIRE_BYTES:
+                int len = (int) readVarLong();
+                pos += len;
+                break;
+            default:
+                throw new IllegalStateException("未知的字段类型: " + wireType);
+        }
+    }
+}
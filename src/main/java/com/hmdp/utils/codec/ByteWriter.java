@@ -0,0 +1,107 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 二进制编码的写入器
+ * 字段按 (字段编号 << 3 | 类型) + 值 的方式写入，值为null的字段不写，字段结束时写入0
+ * 读取方遇到不认识的字段编号可以根据类型跳过，因此新增字段不影响旧数据的读取
+ */
+public class ByteWriter {
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_FIXED64 = 1;
+    static final int WIRE_BYTES = 2;
+
+    private byte[] buf;
+    private int pos;
+
+    public ByteWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    /**
+     * 写入无符号变长整数，每个字节7位有效
+     */
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    public void writeLong(int field, Long v) {
+        if (v != null) {
+            writeVarLong(field << 3 | WIRE_VARINT);
+            //zigzag编码，负数也能用较少的字节表示
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+    }
+
+    public void writeInt(int field, Integer v) {
+        if (v != null) {
+            writeLong(field, v.longValue());
+        }
+    }
+
+    public void writeBoolean(int field, Boolean v) {
+        if (v != null) {
+            writeLong(field, v ? 1L : 0L);
+        }
+    }
+
+    public void writeDouble(int field, Double v) {
+        if (v != null) {
+            writeVarLong(field << 3 | WIRE_FIXED64);
+            ensure(8);
+            long bits = Double.doubleToRawLongBits(v);
+            for (int i = 0; i < 8; i++) {
+                buf[pos++] = (byte) (bits >>> (i << 3));
+            }
+        }
+    }
+
+    public void writeString(int field, String v) {
+        if (v != null) {
+            byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(field << 3 | WIRE_BYTES);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+    }
+
+    /**
+     * 时间按毫秒时间戳写入
+     */
+    public void writeDateTime(int field, LocalDateTime v) {
+        if (v != null) {
+            writeLong(field, v.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    public void endFields() {
+        writeByte(0);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.hmdp.utils.codec;
+
+/**
+ * 单个实体类型的二进制编解码
+ * 新增字段时使用新的字段编号即可，旧数据缺少的字段保持null；
+ * 字段含义发生变化时提升版本号，并在read中按版本分别处理
+ */
+public interface EntityCodec<T> {
+
+    /**
+     * 类型标识，写入数据中，不能与其它类型重复，也不能修改
+     */
+    int tag();
+
+    Class<T> type();
+
+    /**
+     * 当前的编码版本
+     */
+    int version();
+
+    void write(T value, ByteWriter writer);
+
+    T read(ByteReader reader, int version);
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Shop;
+
+/**
+ * 店铺的二进制编码，字段编号一旦确定不能修改
+ */
+public class ShopCodec implements EntityCodec<Shop> {
+
+    @Override
+    public int tag() {
+        return 1;
+    }
+
+    @Override
+    public Class<Shop> type() {
+        return Shop.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(Shop value, ByteWriter writer) {
+        writer.writeLong(1, value.getId());
+        writer.writeString(2, value.getName());
+        writer.writeLong(3, value.getTypeId());
+        writer.writeString(4, value.getImages());
+        writer.writeString(5, value.getArea());
+        writer.writeString(6, value.getAddress());
+        writer.writeDouble(7, value.getX());
+        writer.writeDouble(8, value.getY());
+        writer.writeLong(9, value.getAvgPrice());
+        writer.writeInt(10, value.getSold());
+        writer.writeInt(11, value.getComments());
+        writer.writeInt(12, value.getScore());
+        writer.writeString(13, value.getOpenHours());
+        writer.writeDateTime(14, value.getCreateTime());
+        writer.writeDateTime(15, value.getUpdateTime());
+        writer.writeDouble(16, value.getDistance());
+        writer.endFields();
+    }
+
+    @Override
+    public Shop read(ByteReader reader, int version) {
+        Shop value = new Shop();
+        int field;
+        while ((field = reader.nextField()) != 0) {
+            switch (field) {
+                case 1:
+                    value.setId(reader.readLong());
+                    break;
+                case 2:
+                    value.setName(reader.readString());
+                    break;
+                case 3:
+                    value.setTypeId(reader.readLong());
+                    break;
+                case 4:
+                    value.setImages(reader.readString());
+                    break;
+                case 5:
+                    value.setArea(reader.readString());
+                    break;
+                case 6:
+                    value.setAddress(reader.readString());
+                    break;
+                case 7:
+                    value.setX(reader.readDouble());
+                    break;
+                case 8:
+                    value.setY(reader.readDouble());
+                    break;
+                case 9:
+                    value.setAvgPrice(reader.readLong());
+                    break;
+                case 10:
+                    value.setSold(reader.readInt());
+                    break;
+                case 11:
+                    value.setComments(reader.readInt());
+                    break;
+                case 12:
+                    value.setScore(reader.readInt());
+                    break;
+                case 13:
+                    value.setOpenHours(reader.readString());
+                    break;
+                case 14:
+                    value.setCreateTime(reader.readDateTime());
+                    break;
+                case 15:
+                    value.setUpdateTime(reader.readDateTime());
+                    break;
+                case 16:
+                    value.setDistance(reader.readDouble());
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return value;
+    }
+}
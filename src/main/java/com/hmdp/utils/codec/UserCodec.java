@@ -0,0 +1,63 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.User;
+
+/**
+ * 用户的二进制编码，字段编号一旦确定不能修改
+ * 缓存中不保存手机号和密码，2、3号字段不再写入，读到旧数据时跳过
+ */
+public class UserCodec implements EntityCodec<User> {
+
+    @Override
+    public int tag() {
+        return 5;
+    }
+
+    @Override
+    public Class<User> type() {
+        return User.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(User value, ByteWriter writer) {
+        writer.writeLong(1, value.getId());
+        writer.writeString(4, value.getNickName());
+        writer.writeString(5, value.getIcon());
+        writer.writeDateTime(6, value.getCreateTime());
+        writer.writeDateTime(7, value.getUpdateTime());
+        writer.endFields();
+    }
+
+    @Override
+    public User read(ByteReader reader, int version) {
+        User value = new User();
+        int field;
+        while ((field = reader.nextField()) != 0) {
+            switch (field) {
+                case 1:
+                    value.setId(reader.readLong());
+                    break;
+                case 4:
+                    value.setNickName(reader.readString());
+                    break;
+                case 5:
+                    value.setIcon(reader.readString());
+                    break;
+                case 6:
+                    value.setCreateTime(reader.readDateTime());
+                    break;
+                case 7:
+                    value.setUpdateTime(reader.readDateTime());
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return value;
+    }
+}
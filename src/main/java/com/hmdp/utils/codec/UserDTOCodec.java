@@ -0,0 +1,54 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.dto.UserDTO;
+
+/**
+ * 登录用户的二进制编码，字段编号一旦确定不能修改
+ */
+public class UserDTOCodec implements EntityCodec<UserDTO> {
+
+    @Override
+    public int tag() {
+        return 4;
+    }
+
+    @Override
+    public Class<UserDTO> type() {
+        return UserDTO.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(UserDTO value, ByteWriter writer) {
+        writer.writeLong(1, value.getId());
+        writer.writeString(2, value.getNickName());
+        writer.writeString(3, value.getIcon());
+        writer.endFields();
+    }
+
+    @Override
+    public UserDTO read(ByteReader reader, int version) {
+        UserDTO value = new UserDTO();
+        int field;
+        while ((field = reader.nextField()) != 0) {
+            switch (field) {
+                case 1:
+                    value.setId(reader.readLong());
+                    break;
+                case 2:
+                    value.setNickName(reader.readString());
+                    break;
+                case 3:
+                    value.setIcon(reader.readString());
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return value;
+    }
+}
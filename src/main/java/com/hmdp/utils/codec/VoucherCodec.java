@@ -0,0 +1,98 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Voucher;
+
+/**
+ * 优惠券的二进制编码，字段编号一旦确定不能修改
+ */
+public class VoucherCodec implements EntityCodec<Voucher> {
+
+    @Override
+    public int tag() {
+        return 3;
+    }
+
+    @Override
+    public Class<Voucher> type() {
+        return Voucher.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(Voucher value, ByteWriter writer) {
+        writer.writeLong(1, value.getId());
+        writer.writeLong(2, value.getShopId());
+        writer.writeString(3, value.getTitle());
+        writer.writeString(4, value.getSubTitle());
+        writer.writeString(5, value.getRules());
+        writer.writeLong(6, value.getPayValue());
+        writer.writeLong(7, value.getActualValue());
+        writer.writeInt(8, value.getType());
+        writer.writeInt(9, value.getStatus());
+        writer.writeInt(10, value.getStock());
+        writer.writeDateTime(11, value.getBeginTime());
+        writer.writeDateTime(12, value.getEndTime());
+        writer.writeDateTime(13, value.getCreateTime());
+        writer.writeDateTime(14, value.getUpdateTime());
+        writer.endFields();
+    }
+
+    @Override
+    public Voucher read(ByteReader reader, int version) {
+        Voucher value = new Voucher();
+        int field;
+        while ((field = reader.nextField()) != 0) {
+            switch (field) {
+                case 1:
+                    value.setId(reader.readLong());
+                    break;
+                case 2:
+                    value.setShopId(reader.readLong());
+                    break;
+                case 3:
+                    value.setTitle(reader.readString());
+                    break;
+                case 4:
+                    value.setSubTitle(reader.readString());
+                    break;
+                case 5:
+                    value.setRules(reader.readString());
+                    break;
+                case 6:
+                    value.setPayValue(reader.readLong());
+                    break;
+                case 7:
+                    value.setActualValue(reader.readLong());
+                    break;
+                case 8:
+                    value.setType(reader.readInt());
+                    break;
+                case 9:
+                    value.setStatus(reader.readInt());
+                    break;
+                case 10:
+                    value.setStock(reader.readInt());
+                    break;
+                case 11:
+                    value.setBeginTime(reader.readDateTime());
+                    break;
+                case 12:
+                    value.setEndTime(reader.readDateTime());
+                    break;
+                case 13:
+                    value.setCreateTime(reader.readDateTime());
+                    break;
+                case 14:
+                    value.setUpdateTime(reader.readDateTime());
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        return value;
+    }
+}
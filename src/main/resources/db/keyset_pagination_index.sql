@@ -0,0 +1,4 @@
+-- 键集分页使用的联合索引，按 (过滤列, 排序列, id) 定位下一页，不需要回表排序
+ALTER TABLE `tb_shop` ADD INDEX `idx_type_id_id` (`type_id`, `id`);
+ALTER TABLE `tb_blog` ADD INDEX `idx_user_id_id` (`user_id`, `id`);
+ALTER TABLE `tb_blog` ADD INDEX `idx_liked_id` (`liked`, `id`);
@@ -0,0 +1,13 @@
+-- 缓存失效事件的发件箱，与业务数据在同一个事务中写入，由CacheOutboxServiceImpl异步投递到redis
+CREATE TABLE IF NOT EXISTS `tb_cache_outbox` (
+  `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `type` varchar(16) NOT NULL COMMENT '事件类型',
+  `payload` varchar(1024) NOT NULL COMMENT '事件内容，EVICT事件为逗号分隔的缓存key，PUBLISH事件为 频道|消息，SHOP_GEO事件为 店铺id[,原类型id]',
+  `status` tinyint(1) unsigned NOT NULL DEFAULT 0 COMMENT '状态，0：待投递，1：已投递一次，等待延迟双删',
+  `retry_count` int(8) unsigned NOT NULL DEFAULT 0 COMMENT '失败重试次数',
+  `next_retry_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次投递时间',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_next_retry_time` (`next_retry_time`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPACT;
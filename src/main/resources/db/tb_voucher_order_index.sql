@@ -0,0 +1,2 @@
+-- 一人一单由唯一索引保证，批量写入订单时用 INSERT IGNORE 跳过重复的订单，不再逐个查询
+ALTER TABLE `tb_voucher_order` ADD UNIQUE INDEX `uk_user_id_voucher_id` (`user_id`, `voucher_id`);
@@ -1,21 +1,60 @@
--- 订单id
+-- 读取当前时间后还要写入，低版本redis需要按命令复制
+redis.replicate_commands()
+-- 优惠券id
 local voucherId = ARGV[1]
 -- 用户id
 local userId = ARGV[2]
+-- 订单id自增序列的key
+local idKey = ARGV[3]
+-- 下单时间，秒，和序列号一起拼接订单id
+local time = ARGV[4]
+-- 序列号的步长，和分片模式生成的序列号互不重复
+local stride = tonumber(ARGV[5])
 -- 优惠券key
 local stockKey = 'seckill:stock:' .. voucherId
 -- 订单key
 local orderKey = 'seckill:order:' .. voucherId
+-- 元数据key
+local metaKey = 'seckill:meta:' .. voucherId
+-- 令牌桶key
+local rateKey = 'seckill:rate:' .. voucherId
+-- 判断是否在秒杀时间内，以redis的时间为准
+local now = redis.call('time')
+local nowMillis = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000)
+local meta = redis.call('hmget', metaKey, 'begin', 'end', 'rate')
+if (meta[1] and nowMillis < tonumber(meta[1])) then
+    return {3}
+end
+if (meta[2] and nowMillis > tonumber(meta[2])) then
+    return {4}
+end
 -- 判断库存是否充足
 if (tonumber(redis.call('get', stockKey)) <= 0) then
-    return 1
+    return {1}
 end
 -- 判断用户是否下单
 if (redis.call('sismember', orderKey, userId) == 1) then
-    return 2
+    return {2}
+end
+-- 秒杀券的令牌桶，所有节点共享，容量等于每秒的速率
+local rate = tonumber(meta[3])
+if (rate and rate > 0) then
+    local bucket = redis.call('hmget', rateKey, 'tokens', 'ts')
+    local tokens = tonumber(bucket[1]) or rate
+    local ts = tonumber(bucket[2]) or nowMillis
+    tokens = math.min(rate, tokens + math.max(nowMillis - ts, 0) * rate / 1000)
+    if (tokens < 1) then
+        return {5}
+    end
+    redis.call('hset', rateKey, 'tokens', tokens - 1, 'ts', nowMillis)
+    redis.call('pexpire', rateKey, 60000)
 end
 -- 扣减库存
 redis.call('incrby', stockKey, -1)
 -- 将userId存入当前优惠券的set集合
 redis.call('sadd', orderKey, userId)
-return 0
\ No newline at end of file
+-- 生成订单id的序列号，和资格校验在同一次往返中完成
+local seq = redis.call('incr', idKey) * stride
+-- 订单写入stream，和扣减库存一起原子地完成，节点宕机也不会丢单
+redis.call('xadd', 'stream.orders', '*', 'voucherId', voucherId, 'userId', userId, 'time', time, 'seq', seq)
+return {0, seq}
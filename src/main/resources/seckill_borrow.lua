@@ -0,0 +1,9 @@
+-- 从兄弟分片借库存，一次借走一半(向上取整)，返回借到的数量
+-- KEYS[1] 兄弟分片的库存
+local stock = tonumber(redis.call('get', KEYS[1]) or '0')
+if (stock <= 0) then
+    return 0
+end
+local amount = math.ceil(stock / 2)
+redis.call('incrby', KEYS[1], -amount)
+return amount
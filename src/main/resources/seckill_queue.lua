@@ -0,0 +1,25 @@
+-- 秒杀券的排队号和入场时间
+-- KEYS[1] 排队状态hash：seq最后一个排队号，tat最后一个排队号的入场时间(微秒)
+-- KEYS[2] 已排队用户的 排队号:入场时间(毫秒)
+-- ARGV[1] 用户id ARGV[2] 开始时间，毫秒，没有开始时间时为0 ARGV[3] 每秒入场人数
+local userId = ARGV[1]
+-- 同一个用户重复排队时返回原来的排队号和入场时间
+local existing = redis.call('hget', KEYS[2], userId)
+if (existing) then
+    return existing
+end
+-- 入场时间按排队顺序每人间隔 1秒/入场速率，从 开始时间、当前时间、上一个人的入场时间 中最晚的一个往后排，
+-- 队伍排空之后再来的人从当前时间重新开始排，不会因为距离开始时间很久而一次性全部放行
+local now = redis.call('time')
+local nowMicros = tonumber(now[1]) * 1000000 + tonumber(now[2])
+local interval = math.floor(1000000 / tonumber(ARGV[3]))
+local tat = tonumber(redis.call('hget', KEYS[1], 'tat') or 0)
+local admitAt = math.max(tat + interval, nowMicros, tonumber(ARGV[2]) * 1000)
+local position = redis.call('hincrby', KEYS[1], 'seq', 1)
+redis.call('hset', KEYS[1], 'tat', string.format('%.0f', admitAt))
+local value = position .. ':' .. string.format('%.0f', math.floor(admitAt / 1000))
+redis.call('hset', KEYS[2], userId, value)
+-- 排队信息保留一天
+redis.call('expire', KEYS[1], 86400)
+redis.call('expire', KEYS[2], 86400)
+return value
@@ -0,0 +1,9 @@
+-- KEYS[1] 库存 KEYS[2] 已下单用户，分片模式下是用户所在分片的key
+-- 用户id
+local userId = ARGV[1]
+-- 用户还在已下单集合中才归还库存，重复回滚不会多加库存
+if (redis.call('srem', KEYS[2], userId) == 1) then
+    redis.call('incrby', KEYS[1], 1)
+    return 1
+end
+return 0
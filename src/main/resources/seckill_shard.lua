@@ -0,0 +1,55 @@
+-- 分片模式的秒杀脚本，所有key带有同一个分片的hash tag，在集群中落在同一个slot
+-- KEYS[1] 分片库存 KEYS[2] 分片已下单用户 KEYS[3] 分片订单id序列号 KEYS[4] 分片订单stream KEYS[5] 分片元数据 KEYS[6] 分片令牌桶
+-- 读取当前时间后还要写入，低版本redis需要按命令复制
+redis.replicate_commands()
+-- 优惠券id
+local voucherId = ARGV[1]
+-- 用户id
+local userId = ARGV[2]
+-- 下单时间，秒，和序列号一起拼接订单id
+local time = ARGV[3]
+-- 序列号的步长和分片偏移，不同分片生成的序列号互不重复
+local stride = tonumber(ARGV[4])
+local offset = tonumber(ARGV[5])
+-- 判断是否在秒杀时间内，以redis的时间为准
+local now = redis.call('time')
+local nowMillis = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000)
+local meta = redis.call('hmget', KEYS[5], 'begin', 'end', 'rate')
+if (meta[1] and nowMillis < tonumber(meta[1])) then
+    return {3}
+end
+if (meta[2] and nowMillis > tonumber(meta[2])) then
+    return {4}
+end
+-- 判断分片库存是否充足
+if (tonumber(redis.call('get', KEYS[1]) or '0') <= 0) then
+    return {1}
+end
+-- 判断用户是否下单，同一个用户总是落在同一个分片
+if (redis.call('sismember', KEYS[2], userId) == 1) then
+    return {2}
+end
+-- 秒杀券的令牌桶，所有节点共享，每个分片分到速率的1/分片数
+local rate = tonumber(meta[3])
+if (rate and rate > 0) then
+    rate = rate / tonumber(ARGV[6])
+    -- 速率小于分片数时每个分片的速率不足1，容量至少为1才能放行
+    local capacity = math.max(rate, 1)
+    local bucket = redis.call('hmget', KEYS[6], 'tokens', 'ts')
+    local tokens = tonumber(bucket[1]) or capacity
+    local ts = tonumber(bucket[2]) or nowMillis
+    tokens = math.min(capacity, tokens + math.max(nowMillis - ts, 0) * rate / 1000)
+    if (tokens < 1) then
+        return {5}
+    end
+    redis.call('hset', KEYS[6], 'tokens', tokens - 1, 'ts', nowMillis)
+    redis.call('pexpire', KEYS[6], 60000)
+end
+-- 扣减库存
+redis.call('incrby', KEYS[1], -1)
+-- 将userId存入分片的set集合
+redis.call('sadd', KEYS[2], userId)
+-- 生成订单id的序列号，写入分片的stream
+local seq = redis.call('incr', KEYS[3]) * stride + offset
+redis.call('xadd', KEYS[4], '*', 'voucherId', voucherId, 'userId', userId, 'time', time, 'seq', seq)
+return {0, seq}
@@ -2,14 +2,20 @@ package com.hmdp;
 
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.RedisStreamQueue;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.annotation.Resource;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -59,4 +65,33 @@ class HmDianPingApplicationTests {
         Long count = stringRedisTemplate.opsForHyperLogLog().size("HLL");
         System.out.println("count = " + count);
     }
+
+    /**
+     * 消费者读取后没有确认就宕机，订单留在pending-list中，由另一个消费者认领后处理并确认
+     */
+    @Test
+    public void testRedisStreamQueue() {
+        String key = "stream.orders.test";
+        stringRedisTemplate.delete(key);
+        RedisStreamQueue queue = new RedisStreamQueue(stringRedisTemplate, key, "g1");
+        queue.createGroup();
+        queue.createGroup();
+        stringRedisTemplate.opsForStream().add(key, Collections.singletonMap("userId", "1"));
+        //1.消费者c1读取后不确认
+        List<MapRecord<String, Object, Object>> records = queue.read("c1", 10, Duration.ofMillis(100));
+        Assertions.assertEquals(1, records.size());
+        Assertions.assertTrue(queue.read("c1", 10, Duration.ofMillis(100)).isEmpty());
+        Assertions.assertEquals(1, queue.pendingCount());
+        //2.消费者c2认领超时的消息
+        List<RecordId> ids = new ArrayList<>();
+        queue.idle(Duration.ZERO, 100).forEach(message -> ids.add(message.getId()));
+        List<MapRecord<String, Object, Object>> claimed = queue.claim("c2", Duration.ZERO, ids);
+        Assertions.assertEquals(1, claimed.size());
+        Assertions.assertEquals("1", claimed.get(0).getValue().get("userId"));
+        //3.确认后pending-list和stream都清空
+        queue.ack(Collections.singletonList(claimed.get(0).getId()));
+        Assertions.assertEquals(0, queue.pendingCount());
+        Assertions.assertEquals(0, queue.size());
+        stringRedisTemplate.delete(key);
+    }
 }
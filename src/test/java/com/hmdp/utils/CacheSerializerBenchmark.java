@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+/**
+ * 缓存序列化的基准测试，不启动spring容器，直接运行main方法
+ * 对每种实体分别统计json和二进制编码的平均编码耗时、解码耗时和编码后的字节数
+ * 不以Test结尾，不会在mvn test中执行
+ */
+public class CacheSerializerBenchmark {
+
+    private static final int WARM_UP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    //防止JIT把没有使用结果的编解码优化掉
+    private static long sink;
+
+    public static void main(String[] args) {
+        CacheSerializer json = new JsonCacheSerializer();
+        CacheSerializer binary = new BinaryCacheSerializer(json);
+        System.out.printf("%-8s %-7s %12s %12s %8s%n", "type", "codec", "encode ns", "decode ns", "bytes");
+        run("Shop", Shop.class, CacheSerializerBenchmark::shop, json, binary);
+        run("Blog", Blog.class, CacheSerializerBenchmark::blog, json, binary);
+        run("Voucher", Voucher.class, CacheSerializerBenchmark::voucher, json, binary);
+        run("UserDTO", UserDTO.class, CacheSerializerBenchmark::userDTO, json, binary);
+        System.out.println("sink " + sink);
+    }
+
+    private static <T> void run(String name, Class<T> type, Supplier<T> sample,
+                                CacheSerializer json, CacheSerializer binary) {
+        T value = sample.get();
+        measure(name, "json", type, value, json);
+        measure(name, "binary", type, value, binary);
+    }
+
+    private static <T> void measure(String name, String codec, Class<T> type, T value, CacheSerializer serializer) {
+        byte[] bytes = serializer.serialize(value);
+        //预热，让JIT编译编解码的代码
+        for (int i = 0; i < WARM_UP; i++) {
+            sink += serializer.serialize(value).length;
+            sink += serializer.deserialize(bytes, type).hashCode();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += serializer.serialize(value).length;
+        }
+        long encode = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += serializer.deserialize(bytes, type).hashCode();
+        }
+        long decode = System.nanoTime() - begin;
+        System.out.printf("%-8s %-7s %12.1f %12.1f %8d%n", name, codec,
+                (double) encode / ITERATIONS, (double) decode / ITERATIONS, bytes.length);
+    }
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.now().withNano(0)).setUpdateTime(LocalDateTime.now().withNano(0));
+    }
+
+    private static Blog blog() {
+        return new Blog().setId(4L).setShopId(4L).setUserId(2L).setName("可可今天不吃肉")
+                .setIcon("/imgs/icons/kkjtbcr.jpg").setTitle("无尽浪漫的夜晚丨在万花丛中摇晃着红酒杯🍷品战斧牛排🥩")
+                .setImages("/imgs/blogs/7/14/4771fefb-1a87-4252-816c-9f7ec41ffa4a.jpg,/imgs/blogs/4/10/2f07e3c9-ddce-482d-9ea7-c21450f8d7cd.jpg")
+                .setContent("生活就是一半烟火·一半诗意<br/>手执烟火谋生活·心怀诗意以谋爱·<br/>当然<br/>男朋友给不了的浪漫要学会自己给🍒<br/>"
+                        + "无法重来的一生·尽量快乐.<br/><br/>🏰「小筑里·神秘浪漫花园餐厅」🏰<br/><br/>💯这是一家最最最美花园的西餐厅")
+                .setLiked(1).setComments(104)
+                .setCreateTime(LocalDateTime.now().withNano(0)).setUpdateTime(LocalDateTime.now().withNano(0));
+    }
+
+    private static Voucher voucher() {
+        return new Voucher().setId(10L).setShopId(1L).setTitle("100元代金券").setSubTitle("周一至周五均可使用")
+                .setRules("全场通用\\n无需预约\\n可无限叠加\\n不兑现、不找零\\n仅限堂食")
+                .setPayValue(8000L).setActualValue(10000L).setType(1).setStatus(1).setStock(100)
+                .setBeginTime(LocalDateTime.now().withNano(0)).setEndTime(LocalDateTime.now().withNano(0).plusDays(1))
+                .setCreateTime(LocalDateTime.now().withNano(0)).setUpdateTime(LocalDateTime.now().withNano(0));
+    }
+
+    private static UserDTO userDTO() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("user_slxaxy2au9f3tet");
+        user.setIcon("/imgs/icons/user5-icon.png");
+        return user;
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.User;
+import com.hmdp.entity.Voucher;
+import com.hmdp.utils.codec.ByteWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+class CacheSerializerTest {
+
+    private final CacheSerializer json = new JsonCacheSerializer();
+    private final CacheSerializer binary = new BinaryCacheSerializer(json);
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.now().withNano(0)).setUpdateTime(LocalDateTime.now().withNano(0));
+    }
+
+    /**
+     * 两种编码都能还原出相同的对象，二进制编码的每条缓存更小
+     */
+    @Test
+    public void testShopRoundTrip() {
+        Shop shop = shop();
+        byte[] binaryBytes = binary.serialize(shop);
+        byte[] jsonBytes = json.serialize(shop);
+        Assertions.assertEquals(shop, binary.deserialize(binaryBytes, Shop.class));
+        Assertions.assertEquals(shop, json.deserialize(jsonBytes, Shop.class));
+        Assertions.assertTrue(binaryBytes.length < jsonBytes.length,
+                "binary " + binaryBytes.length + " bytes, json " + jsonBytes.length + " bytes");
+    }
+
+    /**
+     * 用户缓存不保存手机号和密码
+     */
+    @Test
+    public void testUserWithoutCredentials() {
+        User user = new User();
+        user.setId(1L);
+        user.setPhone("13812345678");
+        user.setPassword("secret");
+        user.setNickName("user_1");
+        User decoded = binary.deserialize(binary.serialize(user), User.class);
+        Assertions.assertEquals("user_1", decoded.getNickName());
+        Assertions.assertNull(decoded.getPhone());
+        Assertions.assertNull(decoded.getPassword());
+    }
+
+    /**
+     * 升级前写入的json缓存由fallback解析
+     */
+    @Test
+    public void testLegacyJson() {
+        Shop shop = shop();
+        Assertions.assertEquals(shop, binary.deserialize(json.serialize(shop), Shop.class));
+        List<Shop> shops = Arrays.asList(shop, shop().setId(2L));
+        Assertions.assertEquals(shops, binary.deserializeList(json.serialize(shops), Shop.class));
+    }
+
+    /**
+     * 旧版本的用户编码还写入了2、3号字段(手机号和密码)，读取时跳过
+     */
+    @Test
+    public void testOlderUserEncoding() {
+        ByteWriter writer = new ByteWriter(64);
+        writer.writeByte(0xB1);
+        writer.writeByte(5);
+        writer.writeByte(1);
+        writer.writeLong(1, 1L);
+        writer.writeString(2, "13812345678");
+        writer.writeString(3, "secret");
+        writer.writeString(4, "user_1");
+        writer.endFields();
+        User decoded = binary.deserialize(writer.toByteArray(), User.class);
+        Assertions.assertEquals(Long.valueOf(1L), decoded.getId());
+        Assertions.assertEquals("user_1", decoded.getNickName());
+        Assertions.assertNull(decoded.getPhone());
+        Assertions.assertNull(decoded.getPassword());
+    }
+
+    /**
+     * 新版本增加的字段，旧代码读取时按字段类型跳过，其余字段正常读取
+     */
+    @Test
+    public void testUnknownFieldsSkipped() {
+        Voucher voucher = new Voucher().setId(10L).setShopId(1L).setTitle("100元代金券")
+                .setPayValue(8000L).setActualValue(10000L).setType(1).setStock(100)
+                .setBeginTime(LocalDateTime.now().withNano(0));
+        byte[] bytes = binary.serialize(voucher);
+        //去掉结尾的0，追加三种类型的未知字段后重新结束
+        ByteWriter writer = new ByteWriter(bytes.length + 32);
+        for (int i = 0; i < bytes.length - 1; i++) {
+            writer.writeByte(bytes[i]);
+        }
+        writer.writeLong(30, 123456789L);
+        writer.writeDouble(31, 1.5);
+        writer.writeString(32, "新字段");
+        writer.endFields();
+        Assertions.assertEquals(voucher, binary.deserialize(writer.toByteArray(), Voucher.class));
+    }
+}
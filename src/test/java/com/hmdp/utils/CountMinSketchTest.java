@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CountMinSketchTest {
+
+    /**
+     * 模拟倾斜的访问：Count-Min Sketch的估算值不会低于真实次数，热点key的误差很小
+     */
+    @Test
+    public void testSkewedAccess() {
+        CountMinSketch sketch = new CountMinSketch(4, 1 << 15);
+        for (int i = 0; i < 100000; i++) {
+            sketch.add("cache:shop:" + i, 1);
+        }
+        for (int i = 0; i < 10000; i++) {
+            sketch.add("cache:shop:hot", 1);
+        }
+        long hot = sketch.estimate("cache:shop:hot");
+        Assertions.assertTrue(hot >= 10000 && hot < 10100, "hot = " + hot);
+        Assertions.assertTrue(sketch.estimate("cache:shop:1") >= 1);
+        sketch.decay();
+        Assertions.assertTrue(sketch.estimate("cache:shop:hot") >= 5000);
+    }
+}
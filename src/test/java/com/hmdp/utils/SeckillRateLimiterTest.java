@@ -0,0 +1,70 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class SeckillRateLimiterTest {
+
+    /**
+     * 窗口内最多放行limit次，最早的一次移出窗口后才能再放行
+     */
+    @Test
+    public void testSlidingWindow() {
+        SeckillRateLimiter.SlidingWindow window = new SeckillRateLimiter.SlidingWindow(3);
+        Assertions.assertTrue(window.tryAcquire(1000));
+        Assertions.assertTrue(window.tryAcquire(1001));
+        Assertions.assertTrue(window.tryAcquire(1002));
+        Assertions.assertFalse(window.tryAcquire(1500));
+        Assertions.assertFalse(window.tryAcquire(1999));
+        //1000的那一次已经移出窗口
+        Assertions.assertTrue(window.tryAcquire(2000));
+        Assertions.assertFalse(window.tryAcquire(2000));
+        Assertions.assertTrue(window.tryAcquire(2001));
+    }
+
+    /**
+     * 初始是满的，允许一秒的突发；之后按速率补充，空闲再久也不超过容量
+     */
+    @Test
+    public void testTokenBucket() {
+        SeckillRateLimiter.TokenBucket bucket = new SeckillRateLimiter.TokenBucket(5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(bucket.tryAcquire(now));
+        }
+        Assertions.assertFalse(bucket.tryAcquire(now));
+        //200毫秒补充一个令牌
+        now += TimeUnit.MILLISECONDS.toNanos(200);
+        Assertions.assertTrue(bucket.tryAcquire(now));
+        Assertions.assertFalse(bucket.tryAcquire(now));
+        now += TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(bucket.tryAcquire(now));
+        }
+        Assertions.assertFalse(bucket.tryAcquire(now));
+    }
+
+    @Test
+    public void testUnlimited() {
+        SeckillRateLimiter limiter = new SeckillRateLimiter();
+        SeckillVoucherMeta.Meta meta = new SeckillVoucherMeta.Meta(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertFalse(limiter.userLimited(1L, 1L, meta));
+            Assertions.assertFalse(limiter.voucherLimited(1L, meta));
+        }
+    }
+
+    @Test
+    public void testUserLimited() {
+        SeckillRateLimiter limiter = new SeckillRateLimiter();
+        SeckillVoucherMeta.Meta meta = new SeckillVoucherMeta.Meta(Long.MIN_VALUE, Long.MAX_VALUE, 0, 2, 0);
+        Assertions.assertFalse(limiter.userLimited(1L, 1L, meta));
+        Assertions.assertFalse(limiter.userLimited(1L, 1L, meta));
+        Assertions.assertTrue(limiter.userLimited(1L, 1L, meta));
+        //其它用户和其它优惠券不受影响
+        Assertions.assertFalse(limiter.userLimited(1L, 2L, meta));
+        Assertions.assertFalse(limiter.userLimited(2L, 1L, meta));
+    }
+}
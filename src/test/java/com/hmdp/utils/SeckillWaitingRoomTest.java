@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import com.hmdp.dto.WaitingRoomStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SeckillWaitingRoomTest {
+
+    private final SeckillWaitingRoom room = new SeckillWaitingRoom("test-secret", 30);
+
+    //每秒入场10人
+    private final SeckillVoucherMeta.Meta meta = new SeckillVoucherMeta.Meta(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 10);
+
+    private String ticket(long voucherId, long userId, long position, long admitAt) {
+        return room.sign(SeckillWaitingRoom.TYPE_TICKET, voucherId, userId, position, admitAt);
+    }
+
+    /**
+     * 到了入场时间发放入场令牌，令牌只能用于同一个用户和同一张优惠券
+     */
+    @Test
+    public void testAdmission() {
+        WaitingRoomStatus status = room.poll(1L, 2L, ticket(1, 2, 5, System.currentTimeMillis() - 1), meta);
+        Assertions.assertEquals(Long.valueOf(0L), status.getAhead());
+        Assertions.assertNotNull(status.getToken());
+        Assertions.assertTrue(status.getExpireAt() > System.currentTimeMillis() + 25000);
+        Assertions.assertTrue(room.admitted(1L, 2L, status.getToken()));
+        Assertions.assertFalse(room.admitted(1L, 3L, status.getToken()));
+        Assertions.assertFalse(room.admitted(9L, 2L, status.getToken()));
+    }
+
+    @Test
+    public void testRejectWrongUserOrVoucher() {
+        String ticket = ticket(1, 2, 5, System.currentTimeMillis() + 10000);
+        Assertions.assertNotNull(room.poll(1L, 2L, ticket, meta));
+        Assertions.assertNull(room.poll(1L, 3L, ticket, meta));
+        Assertions.assertNull(room.poll(9L, 2L, ticket, meta));
+        //排队凭证不能当作入场令牌使用
+        Assertions.assertFalse(room.admitted(1L, 2L, ticket));
+    }
+
+    /**
+     * 修改了内容或者换了密钥签名的令牌都校验不通过
+     */
+    @Test
+    public void testRejectTampered() {
+        long expireAt = System.currentTimeMillis() + 30000;
+        String token = room.sign(SeckillWaitingRoom.TYPE_ADMISSION, 1L, 2L, expireAt);
+        String signature = token.substring(token.indexOf('.') + 1);
+        String forged = Base64.encodeUrlSafe("A:1:2:" + (expireAt + 3600000)) + "." + signature;
+        Assertions.assertFalse(room.admitted(1L, 2L, forged));
+        String otherUser = Base64.encodeUrlSafe("A:1:3:" + expireAt) + "." + signature;
+        Assertions.assertFalse(room.admitted(1L, 3L, otherUser));
+        String otherKey = new SeckillWaitingRoom("other-secret", 30).sign(SeckillWaitingRoom.TYPE_ADMISSION, 1L, 2L, expireAt);
+        Assertions.assertFalse(room.admitted(1L, 2L, otherKey));
+        Assertions.assertFalse(room.admitted(1L, 2L, "not-a-token"));
+        Assertions.assertFalse(room.admitted(1L, 2L, null));
+    }
+
+    @Test
+    public void testRejectExpired() {
+        String token = room.sign(SeckillWaitingRoom.TYPE_ADMISSION, 1L, 2L, System.currentTimeMillis() - 1);
+        Assertions.assertFalse(room.admitted(1L, 2L, token));
+    }
+
+    /**
+     * 前面的人数按剩余时间和入场速率估算，轮询间隔为剩余时间的一半，限制在0.5秒到5秒之间，再加上最多0.5秒的随机值
+     */
+    @Test
+    public void testPacing() {
+        long now = System.currentTimeMillis();
+        WaitingRoomStatus far = room.poll(1L, 2L, ticket(1, 2, 200, now + 20000), meta);
+        Assertions.assertNull(far.getToken());
+        Assertions.assertTrue(far.getAhead() >= 199 && far.getAhead() <= 200, "ahead " + far.getAhead());
+        assertBetween(5000, 5500, far.getRetryAfter());
+
+        WaitingRoomStatus near = room.poll(1L, 2L, ticket(1, 2, 20, now + 2000), meta);
+        Assertions.assertTrue(near.getAhead() >= 19 && near.getAhead() <= 20, "ahead " + near.getAhead());
+        assertBetween(900, 1500, near.getRetryAfter());
+
+        WaitingRoomStatus soon = room.poll(1L, 2L, ticket(1, 2, 3, now + 300), meta);
+        assertBetween(500, 1000, soon.getRetryAfter());
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        Assertions.assertTrue(actual >= min && actual < max, actual + " not in [" + min + ", " + max + ")");
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class ShopGeoIndexTest {
+
+    private static final double X = 120.15;
+    private static final double Y = 30.28;
+
+    private static Shop shop(long id, long typeId, Double x, Double y) {
+        return new Shop().setId(id).setTypeId(typeId).setX(x).setY(y);
+    }
+
+    private static List<Long> ids(List<ShopGeoIndex.Hit> hits) {
+        return hits.stream().map(ShopGeoIndex.Hit::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testNotLoaded() {
+        Assertions.assertNull(new ShopGeoIndex().search(1L, X, Y, 5000, 0, 10));
+    }
+
+    /**
+     * 按距离从近到远排序，距离相同时按id排序，超出范围的不返回
+     */
+    @Test
+    public void testSearchOrder() {
+        ShopGeoIndex index = new ShopGeoIndex();
+        index.load(1L, Arrays.asList(
+                shop(1, 1, X + 0.02, Y),
+                shop(2, 1, X + 0.01, Y),
+                shop(3, 1, X - 0.01, Y),
+                shop(4, 1, X + 1, Y)));
+        Assertions.assertEquals(Arrays.asList(2L, 3L, 1L), ids(index.search(1L, X, Y, 5000, 0, 10)));
+        Assertions.assertEquals(Arrays.asList(3L, 1L), ids(index.search(1L, X, Y, 5000, 1, 10)));
+        List<ShopGeoIndex.Hit> first = index.search(1L, X, Y, 5000, 0, 1);
+        ShopGeoIndex.Hit last = first.get(0);
+        Assertions.assertEquals(Arrays.asList(3L, 1L),
+                ids(index.search(1L, X, Y, 5000, last.getDistance(), last.getId(), 0, 10)));
+    }
+
+    @Test
+    public void testSkipShopsWithoutLocation() {
+        ShopGeoIndex index = new ShopGeoIndex();
+        Assertions.assertEquals(1, index.load(1L, Arrays.asList(
+                shop(1, 1, X, Y),
+                shop(2, 1, null, Y),
+                shop(3, 1, X, null))));
+        Assertions.assertEquals(Collections.singletonList(1L), ids(index.search(1L, X, Y, 5000, 0, 10)));
+    }
+
+    @Test
+    public void testRefresh() {
+        ShopGeoIndex index = new ShopGeoIndex();
+        index.load(1L, Arrays.asList(shop(1, 1, X, Y), shop(2, 1, X + 0.01, Y)));
+        index.load(2L, new ArrayList<>());
+        //移动到范围外
+        index.refresh(1L, shop(1, 1, X + 1, Y));
+        Assertions.assertEquals(Collections.singletonList(2L), ids(index.search(1L, X, Y, 5000, 0, 10)));
+        //修改类型
+        index.refresh(2L, shop(2, 2, X, Y));
+        Assertions.assertTrue(index.search(1L, X, Y, 5000, 0, 10).isEmpty());
+        Assertions.assertEquals(Collections.singletonList(2L), ids(index.search(2L, X, Y, 5000, 0, 10)));
+        //删除
+        index.refresh(2L, null);
+        Assertions.assertTrue(index.search(2L, X, Y, 5000, 0, 10).isEmpty());
+    }
+
+    /**
+     * 加载期间的变更在索引替换之后重新应用，不会被加载读到的旧数据覆盖
+     */
+    @Test
+    public void testRefreshDuringLoad() {
+        ShopGeoIndex index = new ShopGeoIndex();
+        index.load(2L, Collections.singletonList(shop(3, 2, X, Y)));
+        index.beginLoad(1L);
+        index.refresh(2L, shop(2, 1, X, Y));
+        index.refresh(3L, shop(3, 1, X + 0.01, Y));
+        index.refresh(1L, null);
+        //加载读到的是变更之前的数据
+        index.load(1L, Arrays.asList(shop(1, 1, X, Y), shop(4, 1, X + 0.02, Y)));
+        Assertions.assertEquals(Arrays.asList(2L, 3L, 4L), ids(index.search(1L, X, Y, 5000, 0, 10)));
+        Assertions.assertTrue(index.search(2L, X, Y, 5000, 0, 10).isEmpty());
+        //加载完成后的变更直接更新索引
+        index.refresh(4L, null);
+        Assertions.assertEquals(Arrays.asList(2L, 3L), ids(index.search(1L, X, Y, 5000, 0, 10)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class ShopNameIndexTest {
+
+    private static Shop shop(long id, String name, int sold) {
+        return new Shop().setId(id).setName(name).setSold(sold);
+    }
+
+    private static ShopNameIndex index(Shop... shops) {
+        ShopNameIndex index = new ShopNameIndex();
+        index.build(Arrays.asList(shops), 0);
+        return index;
+    }
+
+    @Test
+    public void testNormalize() {
+        Assertions.assertEquals("abc咖啡", ShopNameIndex.normalize("  ＡＢｃ 咖啡 "));
+        Assertions.assertEquals("", ShopNameIndex.normalize(null));
+    }
+
+    /**
+     * 名称包含关键字的所有bigram但不包含整个关键字时，校验子串后排除
+     */
+    @Test
+    public void testBigramIntersection() {
+        ShopNameIndex index = index(
+                shop(1, "星巴克咖啡", 10),
+                shop(2, "瑞幸咖啡", 20),
+                shop(3, "咖啡厅啡店", 30),
+                shop(4, "巴克斯", 40));
+        Assertions.assertEquals(Arrays.asList(4L, 1L), index.search("巴克", 0, 10));
+        Assertions.assertEquals(Arrays.asList(1L), index.search("克咖", 0, 10));
+        Assertions.assertTrue(index.search("咖啡店", 0, 10).isEmpty());
+        Assertions.assertTrue(index.search("啡瑞", 0, 10).isEmpty());
+        Assertions.assertEquals(Arrays.asList(2L), index.search("瑞", 0, 10));
+    }
+
+    /**
+     * 完全匹配 > 前缀匹配 > 匹配位置靠前 > 名称更短 > 销量更高
+     */
+    @Test
+    public void testRanking() {
+        ShopNameIndex index = index(
+                shop(1, "老咖啡", 1000),
+                shop(2, "咖啡大王", 100),
+                shop(3, "咖啡馆", 5),
+                shop(4, "咖啡", 1),
+                shop(5, "小老咖啡", 2000),
+                shop(6, "咖啡屋", 50));
+        Assertions.assertEquals(Arrays.asList(4L, 6L, 3L, 2L, 1L, 5L), index.search("咖啡", 0, 10));
+        Assertions.assertEquals(Arrays.asList(3L, 2L), index.search("咖啡", 2, 2));
+    }
+
+    @Test
+    public void testDeltaOverlay() {
+        ShopNameIndex index = index(shop(1, "星巴克", 10), shop(2, "瑞幸", 20));
+        index.refresh(1L, shop(1, "喜茶", 10));
+        index.refresh(3L, shop(3, "星星咖啡", 5));
+        Assertions.assertEquals(Arrays.asList(3L), index.search("星", 0, 10));
+        Assertions.assertEquals(Arrays.asList(1L), index.search("喜茶", 0, 10));
+        Assertions.assertEquals(Arrays.asList(3L), ids(index.suggest("星", 10)));
+        index.refresh(2L, null);
+        Assertions.assertTrue(index.search("瑞幸", 0, 10).isEmpty());
+        //重建后增量表中已经包含在主索引里的变更被移除
+        index.build(Arrays.asList(shop(1, "喜茶", 10), shop(3, "星星咖啡", 5)), Long.MAX_VALUE);
+        Assertions.assertEquals(Arrays.asList(3L), index.search("星", 0, 10));
+    }
+
+    /**
+     * 前缀范围超过扫描上限时，按名称排在最后的高销量店铺仍然返回
+     */
+    @Test
+    public void testSuggestBySales() {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            shops.add(shop(i, "a" + i, i));
+        }
+        shops.add(shop(10000, "az", 100000));
+        ShopNameIndex index = index(shops.toArray(new Shop[0]));
+        Assertions.assertEquals(Arrays.asList(10000L, 1499L, 1498L), ids(index.suggest("a", 3)));
+        Assertions.assertEquals(Arrays.asList(1499L, 1498L), ids(index.suggest("a149", 2)));
+        Assertions.assertEquals("az", index.suggest("a", 1).get(0).getName());
+    }
+
+    @Test
+    public void testPagingBound() {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            shops.add(shop(i, "店" + i, i));
+        }
+        ShopNameIndex index = index(shops.toArray(new Shop[0]));
+        Assertions.assertEquals(10, index.search("店", 1990, 10).size());
+        Assertions.assertTrue(index.search("店", 2000, 10).isEmpty());
+        Assertions.assertTrue(index.search("店", Integer.MAX_VALUE - 10, 10).isEmpty());
+        Assertions.assertTrue(index.search("店", -10, 10).isEmpty());
+    }
+
+    private static List<Long> ids(List<Shop> shops) {
+        return shops.stream().map(Shop::getId).collect(Collectors.toList());
+    }
+}